@@ -2,7 +2,6 @@ package ru.vext.engine.component;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import ru.vext.engine.VextApplication;
 import ru.vext.engine.component.base.AbstractParent;
@@ -20,12 +19,14 @@ public class Scene extends AbstractParent implements IDrawable {
     private final VkApplication vkApplication;
     private final VextApplication vextApplication;
 
-    @Setter
     private Color backgroundColor = Color.WHITE;
 
     @Getter
     private boolean isDirty = true;
 
+    // Removed children leave pixels behind that no remaining component covers
+    private boolean isFullyDamaged = true;
+
     public Scene(VextApplication vextApplication) {
         this.vextApplication = vextApplication;
         this.vkApplication = vextApplication.getVkApplication();
@@ -41,12 +42,34 @@ public class Scene extends AbstractParent implements IDrawable {
     @Override
     public void markDirty() {
         isDirty = true;
+        vkApplication.getFrameScheduler().requestFrame();
     }
 
     public void setDirty(boolean isDirty) {
         this.isDirty = isDirty;
     }
 
+    public void markFullyDamaged() {
+        isFullyDamaged = true;
+        markDirty();
+    }
+
+    @Override
+    protected void onChildrenChanged() {
+        markFullyDamaged();
+    }
+
+    public boolean takeFullDamage() {
+        boolean damaged = isFullyDamaged;
+        isFullyDamaged = false;
+        return damaged;
+    }
+
+    public void setBackgroundColor(Color backgroundColor) {
+        this.backgroundColor = backgroundColor;
+        markFullyDamaged();
+    }
+
     @Override
     public float getExternalWidth() {
         return vkApplication.getWidth();
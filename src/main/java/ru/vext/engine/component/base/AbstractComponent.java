@@ -1,11 +1,16 @@
 package ru.vext.engine.component.base;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import org.joml.Vector4f;
 import ru.vext.engine.component.Scene;
 import ru.vext.engine.util.Anchor;
 import ru.vext.engine.util.Unit;
 import ru.vext.engine.vulkan.render.Drawer;
+import ru.vext.engine.vulkan.render.bundle.BundleRegistry;
+import ru.vext.engine.vulkan.render.bundle.CommandBundle;
+import ru.vext.engine.vulkan.render.displaylist.SegmentCache;
 
 import java.awt.*;
 
@@ -35,6 +40,37 @@ public abstract class AbstractComponent extends AbstractParent implements ICompo
 
     private Anchor anchor = Anchor.LEFT_TOP;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final SegmentCache segmentCache = new SegmentCache();
+
+    // Parent layout this component was drawn against, refilled every frame; caches copy it rather than keep it
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final float[] layoutKey = new float[4];
+
+    private boolean isStatic;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private int cleanFrames;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private CommandBundle commandBundle;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean isBundled;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private boolean isDamaged = true;
+
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private final Vector4f screenBounds = new Vector4f();
+
     @Override
     public float getExternalWidth() {
         String expression = String.format("(%s+%s+%s)", calculateWidth(), marginLeft, marginRight);
@@ -91,6 +127,8 @@ public abstract class AbstractComponent extends AbstractParent implements ICompo
 
     @Override
     public void markDirty() {
+        isDamaged = true;
+
         if (!isDirty) {
             isDirty = true;
 
@@ -98,6 +136,23 @@ public abstract class AbstractComponent extends AbstractParent implements ICompo
                 children.markDirty();
             }
         }
+
+        markAncestorsDirty();
+    }
+
+    private void markAncestorsDirty() {
+        // Ancestors re-record their own segment, but their other children keep their cached ones
+        if (parent instanceof AbstractComponent component) {
+            component.isDirty = true;
+            component.markAncestorsDirty();
+        } else if (parent instanceof Scene s) {
+            s.markDirty();
+        }
+    }
+
+    @Override
+    protected void onChildrenChanged() {
+        markDirty();
     }
 
     @Override
@@ -132,6 +187,64 @@ public abstract class AbstractComponent extends AbstractParent implements ICompo
 
     @Override
     public void drawPipeline(Drawer drawer) {
+        float[] layout = layoutKey;
+        layout[0] = parent.getInternalWidth();
+        layout[1] = parent.getInternalHeight();
+        layout[2] = parent.getMaxInternalWidth();
+        layout[3] = parent.getMaxInternalHeight();
+
+        cleanFrames = isDirty ? 0 : cleanFrames + 1;
+
+        if (isStatic || (!getChildren().isEmpty() && cleanFrames >= BundleRegistry.PROMOTION_FRAMES)) {
+            if (commandBundle == null) {
+                commandBundle = drawer.createBundle();
+            }
+
+            if (drawer.drawBundle(commandBundle, this::drawContent, layout, isDirty)) {
+                isBundled = true;
+                isDirty = false;
+                isDamaged = false;
+                return;
+            }
+        }
+
+        if (isBundled) {
+            // Bounds were not tracked while the subtree was drawn from a bundle
+            drawer.addFullDamage();
+            isBundled = false;
+        }
+
+        if (!isDirty && drawer.drawCached(segmentCache, layout)) {
+            return;
+        }
+
+        int start = drawer.getDisplayList().size();
+
+        drawer.beginSegment(segmentCache, layout);
+        drawContent(drawer);
+        drawer.endSegment(segmentCache);
+
+        trackDamage(drawer, start);
+        isDirty = false;
+    }
+
+    private void trackDamage(Drawer drawer, int start) {
+        if (!drawer.isTrackingDamage()) {
+            return;
+        }
+
+        // Re-recorded only for a descendant: repaint only if the subtree actually moved or resized
+        Vector4f bounds = drawer.getBounds(start);
+        if (isDamaged || !bounds.equals(screenBounds)) {
+            drawer.addDamage(screenBounds);
+            drawer.addDamage(bounds);
+            screenBounds.set(bounds);
+        }
+
+        isDamaged = false;
+    }
+
+    private void drawContent(Drawer drawer) {
         preDraw(drawer);
         draw(drawer);
         postDraw(drawer);
@@ -13,6 +13,7 @@ public abstract class AbstractParent implements IParent {
         for (IComponent child : children) {
             child.setParent(this);
         }
+        onChildrenChanged();
     }
 
     public void setChildren(Collection<? extends IComponent> children) {
@@ -21,6 +22,10 @@ public abstract class AbstractParent implements IParent {
         for (IComponent child : children) {
             child.setParent(this);
         }
+        onChildrenChanged();
+    }
+
+    protected void onChildrenChanged() {
     }
 
     public Collection<IComponent> getChildren() {
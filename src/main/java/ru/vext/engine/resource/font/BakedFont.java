@@ -15,7 +15,6 @@ import ru.vext.engine.resource.ResourceType;
 import ru.vext.engine.vulkan.VkApplication;
 import ru.vext.engine.vulkan.buffer.BufferType;
 import ru.vext.engine.vulkan.buffer.ImageView;
-import ru.vext.engine.vulkan.buffer.MemoryBuffer;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -37,7 +36,7 @@ public class BakedFont implements IResource {
     private final Map<Character, Glyph> glyphs;
     private final int ascent, descent, lineGap;
     private final ImageView imageView;
-    private final MemoryBuffer dataBuffer;
+    private final float[] glyphData;
 
     public Glyph[] getGlyphs(CharSequence text) {
         Glyph[] glyphsArray = new Glyph[text.length()];
@@ -75,6 +74,5 @@ public class BakedFont implements IResource {
     @Override
     public void cleanup() {
         imageView.cleanup();
-        dataBuffer.cleanup();
     }
 }
@@ -11,9 +11,8 @@ import org.lwjgl.system.MemoryUtil;
 import ru.vext.engine.resource.IResource;
 import ru.vext.engine.resource.IResourceLoader;
 import ru.vext.engine.vulkan.VkApplication;
-import ru.vext.engine.vulkan.buffer.BufferType;
 import ru.vext.engine.vulkan.buffer.ImageView;
-import ru.vext.engine.vulkan.buffer.MemoryBuffer;
+import ru.vext.engine.vulkan.buffer.MemoryCategory;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,7 +23,6 @@ import java.util.Map;
 
 import static org.lwjgl.stb.STBTruetype.*;
 import static org.lwjgl.stb.STBTruetype.stbtt_GetGlyphBox;
-import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT;
 import static org.lwjgl.vulkan.VK10.VK_FORMAT_R8_UNORM;
 
 @RequiredArgsConstructor
@@ -32,6 +30,7 @@ public class FontLoader implements IResourceLoader {
 
     public static final int FONT_SIZE = 64;
     public static final int MAP_SIZE = 2048;
+    public static final int GLYPH_COUNT = 0x04FF;
 
     private final VkApplication vkApplication;
 
@@ -82,26 +81,28 @@ public class FontLoader implements IResourceLoader {
     private void bakeFont(BakedFont.BakedFontBuilder fontBuilder, STBTTFontinfo fontInfo, ByteBuffer fontData, MemoryStack stack) {
         int width = MAP_SIZE;
         int height = MAP_SIZE;
-        ByteBuffer bitmap = MemoryUtil.memAlloc(width * height);
-
-        STBTTBakedChar.Buffer backedChars = new STBTTBakedChar.Buffer(stack.malloc(0x04FF * STBTTBakedChar.SIZEOF));
-
-        STBTruetype.stbtt_BakeFontBitmap(
-                fontData,
-                FONT_SIZE,
-                bitmap,
-                width,
-                height,
-                0,
-                backedChars
+        STBTTBakedChar.Buffer backedChars = new STBTTBakedChar.Buffer(stack.malloc(GLYPH_COUNT * STBTTBakedChar.SIZEOF));
+
+        // The atlas is baked straight into the mapped staging memory of the image upload
+        ImageView imageView = new ImageView(vkApplication, width, height, VK_FORMAT_R8_UNORM, address ->
+                STBTruetype.stbtt_BakeFontBitmap(
+                        fontData,
+                        FONT_SIZE,
+                        MemoryUtil.memByteBuffer(address, width * height),
+                        width,
+                        height,
+                        0,
+                        backedChars
+                )
         );
+        imageView.setMemoryCategory(MemoryCategory.FONT_ATLAS);
 
         float fontScale = stbtt_ScaleForPixelHeight(fontInfo, FONT_SIZE);
 
-        Float[] data = new Float[Glyph.SIZE * 0x04FF];
+        float[] data = new float[Glyph.SIZE * GLYPH_COUNT];
         Map<Character, Glyph> glyphs = new HashMap<>();
 
-        for (int i = 0; i < 0x04FF; i++) {
+        for (int i = 0; i < GLYPH_COUNT; i++) {
             STBTTBakedChar bakedChar = backedChars.get(i);
             char c = (char) i;
             int glyphIndex = stbtt_FindGlyphIndex(fontInfo, c);
@@ -118,7 +119,7 @@ public class FontLoader implements IResourceLoader {
 
             float offsetY = y0.get(0) * fontScale;
 
-            Float[] minMaxUV = new Float[]{
+            float[] minMaxUV = new float[]{
                     (float) bakedChar.x0() / width,
                     (float) bakedChar.y0() / height,
                     (float) bakedChar.x1() / width,
@@ -138,14 +139,9 @@ public class FontLoader implements IResourceLoader {
             glyph.write(data, i);
         }
 
-        ImageView imageView = new ImageView(vkApplication, bitmap, width, height, VK_FORMAT_R8_UNORM);
-
-        MemoryUtil.memFree(bitmap);
-
-        MemoryBuffer dataBuffer = new MemoryBuffer(vkApplication, data, BufferType.USAGE_INDEX_TRANSFER_DSC | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, BufferType.MEMORY_TYPE_GPU_LOCAL);
-
+        // Uploaded together with every other font's metrics by the font table
         fontBuilder.glyphs(glyphs)
                 .imageView(imageView)
-                .dataBuffer(dataBuffer);
+                .glyphData(data);
     }
 }
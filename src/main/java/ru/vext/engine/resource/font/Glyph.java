@@ -13,9 +13,9 @@ public class Glyph {
     private final float width, height;
     private final float offsetX, offsetY;
     private final float advanceWidth;
-    private final Float[] minMaxUV;
+    private final float[] minMaxUV;
 
-    public Glyph(char character, float width, float height, float advanceWidth, float offsetX, float offsetY, Float[] minMaxUV) {
+    public Glyph(char character, float width, float height, float advanceWidth, float offsetX, float offsetY, float[] minMaxUV) {
         this.character = character;
         this.width = width;
         this.height = height;
@@ -25,7 +25,7 @@ public class Glyph {
         this.minMaxUV = minMaxUV;
     }
 
-    public void write(Float[] data, int index) {
+    public void write(float[] data, int index) {
         index *= SIZE;
         data[index] = width;
         data[index + 1] = height;
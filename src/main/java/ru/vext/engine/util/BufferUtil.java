@@ -1,36 +1,82 @@
 package ru.vext.engine.util;
 
 import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryUtil;
 
 import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.function.BiConsumer;
 
 public class BufferUtil {
 
+    /**
+     * @deprecated boxes every element; use the primitive {@code copy} overloads instead
+     */
+    @Deprecated
     public static void fillBuffer(Object[] numbers, PointerBuffer pb) {
+        fillBuffer(numbers, pb.get(0));
+    }
+
+    /**
+     * @deprecated boxes every element; use the primitive {@code copy} overloads instead
+     */
+    @Deprecated
+    public static void fillBuffer(Object[] numbers, long address) {
         if (numbers instanceof Integer[]) {
-            fillBuffer(numbers, pb.getIntBuffer(0, Integer.BYTES * numbers.length), (b, n) -> b.put(n.intValue()));
+            fillBuffer(numbers, MemoryUtil.memIntBuffer(address, numbers.length), (b, n) -> b.put(n.intValue()));
         } else if (numbers instanceof Long[]) {
-            fillBuffer(numbers, pb.getLongBuffer(0, Long.BYTES * numbers.length), (b, n) -> b.put(n.longValue()));
+            fillBuffer(numbers, MemoryUtil.memLongBuffer(address, numbers.length), (b, n) -> b.put(n.longValue()));
         } else if (numbers instanceof Float[]) {
-            fillBuffer(numbers, pb.getFloatBuffer(0, Float.BYTES * numbers.length), (b, n) -> b.put(n.floatValue()));
+            fillBuffer(numbers, MemoryUtil.memFloatBuffer(address, numbers.length), (b, n) -> b.put(n.floatValue()));
         } else if (numbers instanceof Double[]) {
-            fillBuffer(numbers, pb.getDoubleBuffer(0, Double.BYTES * numbers.length), (b, n) -> b.put(n.doubleValue()));
+            fillBuffer(numbers, MemoryUtil.memDoubleBuffer(address, numbers.length), (b, n) -> b.put(n.doubleValue()));
         } else if (numbers instanceof Short[]) {
-            fillBuffer(numbers, pb.getShortBuffer(0, Short.BYTES * numbers.length), (b, n) -> b.put(n.shortValue()));
+            fillBuffer(numbers, MemoryUtil.memShortBuffer(address, numbers.length), (b, n) -> b.put(n.shortValue()));
         } else if (numbers instanceof Byte[]) {
-            fillBuffer(numbers, pb.getByteBuffer(0, numbers.length), (b, n) -> b.put(n.byteValue()));
+            fillBuffer(numbers, MemoryUtil.memByteBuffer(address, numbers.length), (b, n) -> b.put(n.byteValue()));
         } else {
             throw new IllegalArgumentException("Unsupported number type: " + numbers.getClass().getName());
         }
     }
 
+    /**
+     * @deprecated boxes every element; use the primitive {@code copy} overloads instead
+     */
+    @Deprecated
     public static <T extends Buffer> void fillBuffer(Object[] numbers, T buffer, BiConsumer<T, Number> consumer) {
         for (Object number : numbers) {
             consumer.accept(buffer, (Number) number);
         }
     }
 
+    public static void copy(float[] src, long dst) {
+        MemoryUtil.memFloatBuffer(dst, src.length).put(src);
+    }
+
+    public static void copy(float[] src, int length, long dst) {
+        MemoryUtil.memFloatBuffer(dst, length).put(src, 0, length);
+    }
+
+    public static void copy(int[] src, long dst) {
+        MemoryUtil.memIntBuffer(dst, src.length).put(src);
+    }
+
+    public static void copy(short[] src, long dst) {
+        MemoryUtil.memShortBuffer(dst, src.length).put(src);
+    }
+
+    public static void copy(ByteBuffer src, long dst) {
+        if (src.isDirect()) {
+            MemoryUtil.memCopy(MemoryUtil.memAddress(src), dst, src.remaining());
+        } else {
+            MemoryUtil.memByteBuffer(dst, src.remaining()).put(src.duplicate());
+        }
+    }
+
+    /**
+     * @deprecated only needed by the boxed upload paths
+     */
+    @Deprecated
     public static int getDataSize(Object[] numbers) {
         if (numbers instanceof Integer[]) {
             return Integer.BYTES * numbers.length;
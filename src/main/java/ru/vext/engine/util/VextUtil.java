@@ -70,6 +70,10 @@ public class VextUtil {
         }
     }
 
+    /**
+     * @deprecated the buffer APIs take primitive arrays directly
+     */
+    @Deprecated
     public static Integer[] primitiveToObjectArray(int[] array) {
         Integer[] objects = new Integer[array.length];
         for (int i = 0; i < array.length; i++) {
@@ -78,6 +82,10 @@ public class VextUtil {
         return objects;
     }
 
+    /**
+     * @deprecated the buffer APIs take primitive arrays directly
+     */
+    @Deprecated
     public static Float[] primitiveToObjectArray(float[] array) {
         Float[] objects = new Float[array.length];
         for (int i = 0; i < array.length; i++) {
@@ -86,6 +94,10 @@ public class VextUtil {
         return objects;
     }
 
+    /**
+     * @deprecated the buffer APIs take primitive arrays directly
+     */
+    @Deprecated
     public static Double[] primitiveToObjectArray(double[] array) {
         Double[] objects = new Double[array.length];
         for (int i = 0; i < array.length; i++) {
@@ -94,6 +106,10 @@ public class VextUtil {
         return objects;
     }
 
+    /**
+     * @deprecated the buffer APIs take primitive arrays directly
+     */
+    @Deprecated
     public static Short[] primitiveToObjectArray(short[] array) {
         Short[] objects = new Short[array.length];
         for (int i = 0; i < array.length; i++) {
@@ -102,6 +118,10 @@ public class VextUtil {
         return objects;
     }
 
+    /**
+     * @deprecated the buffer APIs take primitive arrays directly
+     */
+    @Deprecated
     public static Byte[] primitiveToObjectArray(byte[] array) {
         Byte[] objects = new Byte[array.length];
         for (int i = 0; i < array.length; i++) {
@@ -110,6 +130,10 @@ public class VextUtil {
         return objects;
     }
 
+    /**
+     * @deprecated use {@link Color#getRGBColorComponents(float[])} and the primitive buffer APIs
+     */
+    @Deprecated
     public static Float[] getColorArray(Color color) {
         return VextUtil.primitiveToObjectArray(color.getRGBColorComponents(null));
     }
@@ -9,13 +9,22 @@ public class QueueFamilyIndices {
 
     private Integer graphicsFamily;
     private Integer presentFamily;
+    private Integer transferFamily;
 
     public boolean isComplete() {
         return graphicsFamily != null && presentFamily != null;
     }
 
+    public boolean hasDedicatedTransferFamily() {
+        return transferFamily != null && !transferFamily.equals(graphicsFamily);
+    }
+
+    public int getTransferFamilyOrGraphics() {
+        return hasDedicatedTransferFamily() ? transferFamily : graphicsFamily;
+    }
+
     public int[] unique() {
-        return IntStream.of(graphicsFamily, presentFamily).distinct().toArray();
+        return IntStream.of(graphicsFamily, presentFamily, getTransferFamilyOrGraphics()).distinct().toArray();
     }
 
     public int[] array() {
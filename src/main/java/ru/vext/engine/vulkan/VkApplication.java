@@ -10,13 +10,24 @@ import ru.vext.engine.resource.ResourceStorage;
 import ru.vext.engine.resource.ResourceType;
 import ru.vext.engine.util.MemoryUtil;
 import ru.vext.engine.vulkan.buffer.DefaultBuffers;
+import ru.vext.engine.vulkan.buffer.MemoryAllocator;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
 import ru.vext.engine.vulkan.fabric.InstanceFabric;
+import ru.vext.engine.vulkan.sampler.SamplerCache;
+import ru.vext.engine.vulkan.upload.StagingPool;
+import ru.vext.engine.vulkan.upload.UploadScheduler;
 import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.PointerBuffer;
+import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
+import ru.vext.engine.vulkan.render.FrameScheduler;
 import ru.vext.engine.vulkan.render.RenderPipeline;
+import ru.vext.engine.vulkan.render.displaylist.FontTable;
 import ru.vext.engine.resource.font.BakedFont;
+import ru.vext.engine.vulkan.swapchain.pipeline.PipelineCache;
 import ru.vext.engine.vulkan.swapchain.pipeline.graphics.DefaultGraphicsPipeline;
 import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
 import ru.vext.engine.vulkan.swapchain.SwapChain;
@@ -34,6 +45,8 @@ import static org.lwjgl.glfw.GLFWVulkan.glfwCreateWindowSurface;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
+import static org.lwjgl.vulkan.EXTMemoryBudget.VK_EXT_MEMORY_BUDGET_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRIncrementalPresent.VK_KHR_INCREMENTAL_PRESENT_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSurface.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.VK10.*;
@@ -56,9 +69,8 @@ public class VkApplication {
             VALIDATION_LAYERS = null;
     }
 
-    private static final double TARGET_FRAME_TIME = 1.0 / 30.0;
-
     private static final Set<String> DEVICE_EXTENSIONS = Stream.of(VK_KHR_SWAPCHAIN_EXTENSION_NAME).collect(Collectors.toSet());
+    private static final Set<String> OPTIONAL_DEVICE_EXTENSIONS = Stream.of(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME, VK_KHR_INCREMENTAL_PRESENT_EXTENSION_NAME).collect(Collectors.toSet());
 
 
     private static int debugCallback(int messageSeverity, int messageType, long pCallbackData, long pUserData) {
@@ -89,6 +101,10 @@ public class VkApplication {
 
     private final ResourceStorage resourceStorage;
 
+    private final HandleTracker handleTracker = new HandleTracker();
+
+    private final FrameScheduler frameScheduler = new FrameScheduler();
+
     private long window;
 
     private int width = 800, height = 600;
@@ -100,18 +116,34 @@ public class VkApplication {
     private VkPhysicalDevice physicalDevice;
     private VkDevice device;
 
+    private final Set<String> enabledDeviceExtensions = new HashSet<>();
+
+    private QueueFamilyIndices queueFamilyIndices;
+
     private VkQueue graphicsQueue;
     private VkQueue presentQueue;
+    private VkQueue transferQueue;
+
+    // Held around every queue submit, present and wait-idle: the queues may alias and Vulkan requires external sync
+    private final Object queueLock = new Object();
 
     private SwapChain swapChain;
 
     private long commandPool;
 
+    private MemoryAllocator memoryAllocator;
+    private StagingPool stagingPool;
+    private UploadScheduler uploadScheduler;
+    private SamplerCache samplerCache;
+    private PipelineCache pipelineCache;
+    private List<UniformRing> uniformRings;
+
+    private FontTable fontTable;
     private RenderPipeline renderPipeline;
     private DefaultBuffers defaultBuffers;
 
     @Setter
-    private boolean framebufferResized;
+    private volatile boolean framebufferResized;
 
     @Setter
     private Scene scene;
@@ -132,11 +164,15 @@ public class VkApplication {
 
         glfwSetWindowAttrib(window, GLFW_RESIZABLE, GLFW_TRUE);
 
+        GLFWVidMode videoMode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+        frameScheduler.setRefreshRate(videoMode == null ? 0 : videoMode.refreshRate());
+
         glfwSetFramebufferSizeCallback(window, (window, width, height) -> {
             if (width == 0 && height == 0) return;
             this.width = width;
             this.height = height;
             framebufferResized = true;
+            frameScheduler.requestFrame();
         });
     }
 
@@ -148,11 +184,29 @@ public class VkApplication {
         createLogicalDevice();
         createCommandPool();
 
+        memoryAllocator = new MemoryAllocator(this);
+        stagingPool = new StagingPool(this);
+        uploadScheduler = new UploadScheduler(this);
+        samplerCache = new SamplerCache(this);
+        pipelineCache = new PipelineCache(this);
+        pipelineCache.create();
+
+        uniformRings = new ArrayList<>(MAX_FRAMES_IN_FLIGHT);
+        for (int i = 0; i < MAX_FRAMES_IN_FLIGHT; i++) {
+            uniformRings.add(new UniformRing(this));
+        }
+
         defaultBuffers = new DefaultBuffers(this);
         defaultBuffers.create();
     }
 
     public void initRenderPipeline() {
+        List<BakedFont> fonts = new ArrayList<>();
+        for (IResource fontResource : resourceStorage.findResourcesByType(ResourceType.FONT)) {
+            fonts.add((BakedFont) fontResource);
+        }
+        fontTable = new FontTable(this, fonts);
+
         Map<String, GraphicsPipeline> graphicsPipelineMap = createGraphicsPipelines();
 
         swapChain = new SwapChain(this, graphicsPipelineMap);
@@ -171,62 +225,68 @@ public class VkApplication {
                 )
         );
 
-        Collection<IResource> fonts = resourceStorage.findResourcesByType(ResourceType.FONT);
-        for (IResource fontResource : fonts) {
-            String key = "font-" + fontResource.getKey();
-            FontGraphicsPipeline fontGraphicsPipeline = new FontGraphicsPipeline(
-                    this, (BakedFont) fontResource,
-                    "/shader/font.vert", "/shader/font.frag"
+        // One text pipeline serves every font, the atlas is picked per glyph from the table's atlas array
+        if (!fontTable.isEmpty()) {
+            graphicsPipelineMap.put("text",
+                    new FontGraphicsPipeline(
+                            this, fontTable,
+                            "/shader/font.vert", "/shader/font.frag"
+                    )
             );
-            graphicsPipelineMap.put(key, fontGraphicsPipeline);
         }
 
         return graphicsPipelineMap;
     }
 
     public void recreateSwapChain() {
-        vkDeviceWaitIdle(device);
-        swapChain.cleanup();
-        swapChain.create();
+        renderPipeline.runExclusive(() -> {
+            synchronized (queueLock) {
+                vkDeviceWaitIdle(device);
+            }
+            swapChain.recreate();
+        });
     }
 
     public void mainLoop() {
-        long previousTime = System.nanoTime();
-
         while (!glfwWindowShouldClose(window)) {
-            long currentTime = System.nanoTime();
-            double deltaTime = (currentTime - previousTime) / 1e9;
-
-            if (deltaTime < TARGET_FRAME_TIME) {
-                try {
-                    Thread.sleep((long) ((TARGET_FRAME_TIME - deltaTime) * 1000));
-                } catch (InterruptedException e) {
-                    log.error(e.getMessage());
-                }
-            }
-
-            previousTime = currentTime;
-
-            glfwPollEvents();
+            // Blocks while nothing changes; scene mutations and animation ticks wake it up
+            frameScheduler.waitEvents();
 
             if (framebufferResized) {
                 framebufferResized = false;
                 recreateSwapChain();
             }
 
-            renderPipeline.drawFrame();
+            if (frameScheduler.takeFrameRequest()) {
+                renderPipeline.drawFrame();
+            }
         }
 
-        vkDeviceWaitIdle(device);
+        renderPipeline.stopRendering();
+        synchronized (queueLock) {
+            vkDeviceWaitIdle(device);
+        }
     }
 
     public void cleanup() {
+        uploadScheduler.cleanup();
+
         swapChain.cleanup();
+        fontTable.cleanup();
         resourceStorage.cleanup();
         defaultBuffers.cleanup();
         renderPipeline.cleanup();
+        uniformRings.forEach(UniformRing::cleanup);
+
+        pipelineCache.cleanup();
+        samplerCache.cleanup();
+        stagingPool.cleanup();
+        memoryAllocator.cleanup();
 
         vkDestroyCommandPool(device, commandPool, null);
+        handleTracker.unregister(HandleType.COMMAND_POOL, commandPool);
+
+        handleTracker.reportLeaks();
 
         vkDestroyDevice(device, null);
 
@@ -304,6 +364,7 @@ public class VkApplication {
     private void createLogicalDevice() {
         try (MemoryStack stack = stackPush()) {
             QueueFamilyIndices indices = findQueueFamilies(physicalDevice);
+            queueFamilyIndices = indices;
             int[] uniqueQueueFamilies = indices.unique();
             VkDeviceQueueCreateInfo.Buffer queueCreateInfos = VkDeviceQueueCreateInfo.calloc(uniqueQueueFamilies.length, stack);
 
@@ -315,6 +376,8 @@ public class VkApplication {
             }
 
             VkPhysicalDeviceFeatures deviceFeatures = VkPhysicalDeviceFeatures.calloc(stack);
+            // The text pipeline picks a font atlas out of a sampler array by index
+            deviceFeatures.shaderSampledImageArrayDynamicIndexing(true);
 
             VkDeviceCreateInfo createInfo = VkDeviceCreateInfo.calloc(stack);
 
@@ -323,7 +386,17 @@ public class VkApplication {
 
             createInfo.pEnabledFeatures(deviceFeatures);
 
-            createInfo.ppEnabledExtensionNames(MemoryUtil.asPointerBuffer(stack, DEVICE_EXTENSIONS));
+            enabledDeviceExtensions.addAll(DEVICE_EXTENSIONS);
+
+            Set<String> availableExtensions = getAvailableDeviceExtensions(physicalDevice);
+            for (String extension : OPTIONAL_DEVICE_EXTENSIONS) {
+                if (availableExtensions.contains(extension) && areDependenciesEnabled(extension)) {
+                    enabledDeviceExtensions.add(extension);
+                }
+            }
+            log.info("Enabled device extensions: {}", enabledDeviceExtensions);
+
+            createInfo.ppEnabledExtensionNames(MemoryUtil.asPointerBuffer(stack, enabledDeviceExtensions));
 
             if (ENABLE_VALIDATION_LAYERS) {
                 createInfo.ppEnabledLayerNames(MemoryUtil.asPointerBuffer(stack, VALIDATION_LAYERS));
@@ -344,6 +417,13 @@ public class VkApplication {
 
             vkGetDeviceQueue(device, indices.getPresentFamily(), 0, pQueue);
             presentQueue = new VkQueue(pQueue.get(0), device);
+
+            vkGetDeviceQueue(device, indices.getTransferFamilyOrGraphics(), 0, pQueue);
+            transferQueue = new VkQueue(pQueue.get(0), device);
+
+            if (indices.hasDedicatedTransferFamily()) {
+                log.info("Using dedicated transfer queue family {}", indices.getTransferFamily());
+            }
         }
     }
 
@@ -360,18 +440,41 @@ public class VkApplication {
             }
         }
 
-        return indices.isComplete() && extensionsSupported && swapChainAdequate;
+        boolean featuresSupported;
+        try (MemoryStack stack = stackPush()) {
+            VkPhysicalDeviceFeatures features = VkPhysicalDeviceFeatures.malloc(stack);
+            vkGetPhysicalDeviceFeatures(device, features);
+            featuresSupported = features.shaderSampledImageArrayDynamicIndexing();
+        }
+
+        return indices.isComplete() && extensionsSupported && swapChainAdequate && featuresSupported;
     }
 
     private boolean checkDeviceExtensionSupport(VkPhysicalDevice device) {
+        return getAvailableDeviceExtensions(device).containsAll(DEVICE_EXTENSIONS);
+    }
+
+    private Set<String> getAvailableDeviceExtensions(VkPhysicalDevice device) {
         try (MemoryStack stack = stackPush()) {
             IntBuffer extensionCount = stack.ints(0);
             vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, null);
             VkExtensionProperties.Buffer availableExtensions = VkExtensionProperties.malloc(extensionCount.get(0), stack);
             vkEnumerateDeviceExtensionProperties(device, (String) null, extensionCount, availableExtensions);
 
-            return availableExtensions.stream().map(VkExtensionProperties::extensionNameString).collect(Collectors.toSet()).containsAll(DEVICE_EXTENSIONS);
+            return availableExtensions.stream().map(VkExtensionProperties::extensionNameString).collect(Collectors.toSet());
+        }
+    }
+
+    // On a 1.0 instance, memory budget queries go through VK_KHR_get_physical_device_properties2, which is only enabled when present
+    private boolean areDependenciesEnabled(String deviceExtension) {
+        if (deviceExtension.equals(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME)) {
+            return instance.getCapabilities().VK_KHR_get_physical_device_properties2;
         }
+        return true;
+    }
+
+    public boolean isDeviceExtensionEnabled(String extension) {
+        return enabledDeviceExtensions.contains(extension);
     }
 
     public SwapChainSupportDetails querySwapChainSupport(VkPhysicalDevice device, MemoryStack stack) {
@@ -409,9 +512,16 @@ public class VkApplication {
             vkGetPhysicalDeviceQueueFamilyProperties(device, queueFamilyCount, queueFamilies);
             IntBuffer presentSupport = stack.ints(VK_FALSE);
 
-            for (int i = 0; i < queueFamilies.capacity() || !indices.isComplete(); i++) {
-                if ((queueFamilies.get(i).queueFlags() & VK_QUEUE_GRAPHICS_BIT) != 0) {
+            for (int i = 0; i < queueFamilies.capacity(); i++) {
+                int queueFlags = queueFamilies.get(i).queueFlags();
+
+                if ((queueFlags & VK_QUEUE_GRAPHICS_BIT) != 0) {
                     indices.setGraphicsFamily(i);
+                } else if ((queueFlags & VK_QUEUE_TRANSFER_BIT) != 0) {
+                    // Prefer a pure DMA family over one that also exposes compute
+                    if (indices.getTransferFamily() == null || (queueFlags & VK_QUEUE_COMPUTE_BIT) == 0) {
+                        indices.setTransferFamily(i);
+                    }
                 }
 
                 vkGetPhysicalDeviceSurfaceSupportKHR(device, i, surface, presentSupport);
@@ -439,42 +549,7 @@ public class VkApplication {
                 throw new RuntimeException("Failed to create command pool");
 
             commandPool = pCommandPool.get(0);
+            handleTracker.register(HandleType.COMMAND_POOL, commandPool);
         }
     }
-
-    public VkCommandBuffer beginSingleTimeCommands() {
-        try (MemoryStack stack = stackPush()) {
-            VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc()
-                    .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO)
-                    .level(VK_COMMAND_BUFFER_LEVEL_PRIMARY)
-                    .commandPool(commandPool)
-                    .commandBufferCount(1);
-
-            PointerBuffer pCommandBuffer = stack.mallocPointer(1);
-            vkAllocateCommandBuffers(device, allocInfo, pCommandBuffer);
-            VkCommandBuffer commandBuffer = new VkCommandBuffer(pCommandBuffer.get(0), device);
-
-            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc()
-                    .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO)
-                    .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
-
-            vkBeginCommandBuffer(commandBuffer, beginInfo);
-            return commandBuffer;
-        }
-    }
-
-    public void endSingleTimeCommands(VkCommandBuffer commandBuffer) {
-        try (MemoryStack stack = stackPush()) {
-            vkEndCommandBuffer(commandBuffer);
-
-            VkSubmitInfo submitInfo = VkSubmitInfo.calloc()
-                    .sType(VK_STRUCTURE_TYPE_SUBMIT_INFO)
-                    .pCommandBuffers(stack.mallocPointer(1).put(0, commandBuffer));
-
-            vkQueueSubmit(graphicsQueue, submitInfo, VK_NULL_HANDLE);
-            vkQueueWaitIdle(graphicsQueue);
-
-            vkFreeCommandBuffers(device, commandPool, commandBuffer);
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,4 @@
+package ru.vext.engine.vulkan.buffer;
+
+public record BufferSlice(long buffer, long offset, long size, long address) {
+}
@@ -4,14 +4,86 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import ru.vext.engine.vulkan.VkApplication;
 
+@Getter
 @RequiredArgsConstructor
 public class DefaultBuffers {
 
+    public static final int VERTEX_STRIDE = Float.BYTES * 4;
+    public static final short PRIMITIVE_RESTART_INDEX = (short) 0xFFFF;
+
+    public static final int QUAD_VERTEX_COUNT = 4;
+    public static final int NINE_SLICE_INDEX_COUNT = 3 * 8 + 2;
+
     private final VkApplication vkApplication;
 
+    private MemoryBuffer quadVertexBuffer;
+
+    private MemoryBuffer nineSliceVertexBuffer;
+    private MemoryBuffer nineSliceIndexBuffer;
+
     public void create() {
+        // Vertex layout is (anchor.x, anchor.y, inset.x, inset.y): position = anchor * size + inset * border
+        float[] quadVertices = new float[]{
+                0, 0, 0, 0,
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                1, 1, 0, 0
+        };
+
+        quadVertexBuffer = createBuffer(quadVertices, BufferType.USAGE_VERTEX_TRANSFER_DSC);
+
+        nineSliceVertexBuffer = createBuffer(createNineSliceVertices(), BufferType.USAGE_VERTEX_TRANSFER_DSC);
+        nineSliceIndexBuffer = createBuffer(createNineSliceIndices(), BufferType.USAGE_INDEX_TRANSFER_DSC);
+    }
+
+    private float[] createNineSliceVertices() {
+        float[] anchors = new float[]{0, 0, 1, 1};
+        float[] insets = new float[]{0, 1, -1, 0};
+
+        float[] vertices = new float[16 * 4];
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                int offset = (row * 4 + column) * 4;
+                vertices[offset] = anchors[column];
+                vertices[offset + 1] = anchors[row];
+                vertices[offset + 2] = insets[column];
+                vertices[offset + 3] = insets[row];
+            }
+        }
+        return vertices;
+    }
+
+    private short[] createNineSliceIndices() {
+        // One triangle strip per row of cells, separated by primitive restart; (r + 1, c) before (r, c) keeps the quad's winding
+        short[] indices = new short[NINE_SLICE_INDEX_COUNT];
+        int index = 0;
+        for (int row = 0; row < 3; row++) {
+            if (row > 0) {
+                indices[index++] = PRIMITIVE_RESTART_INDEX;
+            }
+            for (int column = 0; column < 4; column++) {
+                indices[index++] = (short) ((row + 1) * 4 + column);
+                indices[index++] = (short) (row * 4 + column);
+            }
+        }
+        return indices;
+    }
+
+    private MemoryBuffer createBuffer(float[] data, int usage) {
+        MemoryBuffer buffer = new MemoryBuffer(vkApplication, data, usage, BufferType.MEMORY_TYPE_GPU_LOCAL);
+        buffer.setMemoryCategory(MemoryCategory.GEOMETRY);
+        return buffer;
+    }
+
+    private MemoryBuffer createBuffer(short[] data, int usage) {
+        MemoryBuffer buffer = new MemoryBuffer(vkApplication, data, usage, BufferType.MEMORY_TYPE_GPU_LOCAL);
+        buffer.setMemoryCategory(MemoryCategory.GEOMETRY);
+        return buffer;
     }
 
     public void cleanup() {
+        quadVertexBuffer.cleanup();
+        nineSliceVertexBuffer.cleanup();
+        nineSliceIndexBuffer.cleanup();
     }
 }
@@ -3,12 +3,16 @@ package ru.vext.engine.vulkan.buffer;
 import lombok.Getter;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
+import ru.vext.engine.util.BufferUtil;
 import ru.vext.engine.util.VextUtil;
-import ru.vext.engine.util.VulkanUtil;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
+import ru.vext.engine.vulkan.upload.StagingPool;
+import ru.vext.engine.vulkan.upload.UploadFuture;
 
 import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
 
 import static org.lwjgl.vulkan.VK10.*;
 
@@ -19,9 +23,26 @@ public class ImageView {
     private final int width, height;
 
     @Getter
-    private final long image, imageMemory, imageView;
+    private final long image, imageView;
+    @Getter
+    private final MemoryAllocation allocation;
+    @Getter
+    private final UploadFuture uploadFuture;
 
     public ImageView(VkApplication vkApplication, ByteBuffer buffer, int width, int height, int format) {
+        this(vkApplication, width, height, format, copyOf(buffer, width, height, format));
+    }
+
+    // Validated before the image exists, so a mismatched buffer can never overrun the staging memory
+    private static LongConsumer copyOf(ByteBuffer buffer, int width, int height, int format) {
+        long size = (long) width * height * getTexelSize(format);
+        if (buffer.remaining() != size) {
+            throw new IllegalArgumentException("Image data is " + buffer.remaining() + " bytes, expected " + size + " for " + width + "x" + height);
+        }
+        return address -> BufferUtil.copy(buffer, address);
+    }
+
+    public ImageView(VkApplication vkApplication, int width, int height, int format, LongConsumer writer) {
         this.vkApplication = vkApplication;
         this.width = width;
         this.height = height;
@@ -45,61 +66,23 @@ public class ImageView {
                 throw new RuntimeException("Failed to create image");
             }
             image = pImage.get(0);
-            imageMemory = allocateImageMemory(stack);
-            transitionImageLayout(VK_IMAGE_LAYOUT_UNDEFINED, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
-            writeData(buffer, stack);
+            vkApplication.getHandleTracker().register(HandleType.IMAGE, image);
+            allocation = vkApplication.getMemoryAllocator().allocateForImage(image, BufferType.MEMORY_TYPE_GPU_LOCAL);
+            uploadFuture = writeData((long) width * height * getTexelSize(format), writer);
             imageView = createImageView(format);
-            transitionImageLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
-        }
-    }
-
-    private long allocateImageMemory(MemoryStack stack) {
-        VkMemoryRequirements memRequirements = VkMemoryRequirements.malloc(stack);
-        vkGetImageMemoryRequirements(vkApplication.getDevice(), image, memRequirements);
-
-        VkMemoryAllocateInfo allocInfo = VkMemoryAllocateInfo.calloc(stack);
-        allocInfo.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
-        allocInfo.allocationSize(memRequirements.size());
-        allocInfo.memoryTypeIndex(VulkanUtil.findMemoryType(stack, vkApplication.getPhysicalDevice(), memRequirements.memoryTypeBits(), VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT));
-
-        LongBuffer pImageMemory = stack.mallocLong(1);
-        if (vkAllocateMemory(vkApplication.getDevice(), allocInfo, null, pImageMemory) != VK_SUCCESS) {
-            throw new RuntimeException("Failed to allocate memory");
         }
-        long imageMemory = pImageMemory.get(0);
-
-        vkBindImageMemory(vkApplication.getDevice(), image, imageMemory, 0);
-
-        return imageMemory;
     }
 
-    private void writeData(ByteBuffer buffer, MemoryStack stack) {
-        Byte[] data = new Byte[buffer.capacity()];
-        for (int i = 0; i < data.length; ++i) {
-            data[i] = buffer.get(i);
-        }
-
-        MemoryBuffer stagingBuffer = new MemoryBuffer(vkApplication, data, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, BufferType.MEMORY_TYPE_CPU_VISIBLE);
-
-        VkCommandBuffer commandBuffer = vkApplication.beginSingleTimeCommands();
-
-        VkBufferImageCopy.Buffer copyRegion = VkBufferImageCopy.calloc(1, stack);
-        copyRegion.bufferOffset(0);
-        copyRegion.bufferRowLength(0);
-        copyRegion.bufferImageHeight(0);
-        copyRegion.imageSubresource(VkImageSubresourceLayers.calloc(stack)
-                .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
-                .mipLevel(0)
-                .baseArrayLayer(0)
-                .layerCount(1));
-        copyRegion.imageOffset(VkOffset3D.calloc(stack).x(0).y(0).z(0));
-        copyRegion.imageExtent(VkExtent3D.calloc(stack).width(width).height(height).depth(1));
+    private UploadFuture writeData(long size, LongConsumer writer) {
+        StagingPool stagingPool = vkApplication.getStagingPool();
+        MappedBuffer stagingBuffer = stagingPool.acquire(size);
+        writer.accept(stagingBuffer.getAddress());
+        stagingBuffer.markDirty(0, size);
+        stagingBuffer.flush();
 
-        vkCmdCopyBufferToImage(commandBuffer, stagingBuffer.getId(), image, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, copyRegion);
-
-        vkApplication.endSingleTimeCommands(commandBuffer);
-
-        stagingBuffer.cleanup();
+        return vkApplication.getUploadScheduler()
+                .copyBufferToImage(stagingBuffer.getId(), 0, image, width, height)
+                .thenRun(() -> stagingPool.release(stagingBuffer));
     }
 
     private long createImageView(int format) {
@@ -120,51 +103,68 @@ public class ImageView {
             if (vkCreateImageView(vkApplication.getDevice(), viewInfo, null, pImageView) != VK_SUCCESS) {
                 throw new RuntimeException("Failed to create image view");
             }
+            vkApplication.getHandleTracker().register(HandleType.IMAGE_VIEW, pImageView.get(0));
             return pImageView.get(0);
         }
     }
 
-    private void transitionImageLayout(int oldLayout, int newLayout) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            VkCommandBuffer commandBuffer = vkApplication.beginSingleTimeCommands();
-
-            VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.calloc(1, stack)
-                    .sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER)
-                    .oldLayout(oldLayout)
-                    .newLayout(newLayout)
-                    .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
-                    .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
-                    .image(image)
-                    .subresourceRange(VkImageSubresourceRange.calloc(stack)
-                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
-                            .baseMipLevel(0)
-                            .levelCount(1)
-                            .baseArrayLayer(0)
-                            .layerCount(1));
-
-            int sourceStage, destinationStage;
-            if (oldLayout == VK_IMAGE_LAYOUT_UNDEFINED && newLayout == VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL) {
-                barrier.srcAccessMask(0);
-                barrier.dstAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
-                sourceStage = VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT;
-                destinationStage = VK_PIPELINE_STAGE_TRANSFER_BIT;
-            } else if (oldLayout == VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL && newLayout == VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL) {
-                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
-                barrier.dstAccessMask(VK_ACCESS_SHADER_READ_BIT);
-                sourceStage = VK_PIPELINE_STAGE_TRANSFER_BIT;
-                destinationStage = VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT;
-            } else {
-                throw new RuntimeException("Неподдерживаемый переход layout");
-            }
+    // Covers every uncompressed color format of Vulkan 1.0; the enum groups formats of equal size into ranges
+    private static int getTexelSize(int format) {
+        if (format == VK_FORMAT_R4G4_UNORM_PACK8 || between(format, VK_FORMAT_R8_UNORM, VK_FORMAT_R8_SRGB)) {
+            return 1;
+        }
+        if (between(format, VK_FORMAT_R4G4B4A4_UNORM_PACK16, VK_FORMAT_A1R5G5B5_UNORM_PACK16)
+                || between(format, VK_FORMAT_R8G8_UNORM, VK_FORMAT_R8G8_SRGB)
+                || between(format, VK_FORMAT_R16_UNORM, VK_FORMAT_R16_SFLOAT)) {
+            return 2;
+        }
+        if (between(format, VK_FORMAT_R8G8B8_UNORM, VK_FORMAT_B8G8R8_SRGB)) {
+            return 3;
+        }
+        if (between(format, VK_FORMAT_R8G8B8A8_UNORM, VK_FORMAT_A2B10G10R10_SINT_PACK32)
+                || between(format, VK_FORMAT_R16G16_UNORM, VK_FORMAT_R16G16_SFLOAT)
+                || between(format, VK_FORMAT_R32_UINT, VK_FORMAT_R32_SFLOAT)
+                || between(format, VK_FORMAT_B10G11R11_UFLOAT_PACK32, VK_FORMAT_E5B9G9R9_UFLOAT_PACK32)) {
+            return 4;
+        }
+        if (between(format, VK_FORMAT_R16G16B16_UNORM, VK_FORMAT_R16G16B16_SFLOAT)) {
+            return 6;
+        }
+        if (between(format, VK_FORMAT_R16G16B16A16_UNORM, VK_FORMAT_R16G16B16A16_SFLOAT)
+                || between(format, VK_FORMAT_R32G32_UINT, VK_FORMAT_R32G32_SFLOAT)
+                || between(format, VK_FORMAT_R64_UINT, VK_FORMAT_R64_SFLOAT)) {
+            return 8;
+        }
+        if (between(format, VK_FORMAT_R32G32B32_UINT, VK_FORMAT_R32G32B32_SFLOAT)) {
+            return 12;
+        }
+        if (between(format, VK_FORMAT_R32G32B32A32_UINT, VK_FORMAT_R32G32B32A32_SFLOAT)
+                || between(format, VK_FORMAT_R64G64_UINT, VK_FORMAT_R64G64_SFLOAT)) {
+            return 16;
+        }
+        if (between(format, VK_FORMAT_R64G64B64_UINT, VK_FORMAT_R64G64B64_SFLOAT)) {
+            return 24;
+        }
+        if (between(format, VK_FORMAT_R64G64B64A64_UINT, VK_FORMAT_R64G64B64A64_SFLOAT)) {
+            return 32;
+        }
+        throw new RuntimeException("Unsupported image format " + format + ": depth, stencil and compressed formats cannot be uploaded as color texels");
+    }
 
-            vkCmdPipelineBarrier(commandBuffer, sourceStage, destinationStage, 0, null, null, barrier);
+    private static boolean between(int format, int first, int last) {
+        return format >= first && format <= last;
+    }
 
-            vkApplication.endSingleTimeCommands(commandBuffer);
-        }
+    public void setMemoryCategory(MemoryCategory category) {
+        vkApplication.getMemoryAllocator().setCategory(allocation, category);
     }
 
     public void cleanup() {
+        vkDestroyImageView(vkApplication.getDevice(), imageView, null);
+        vkApplication.getHandleTracker().unregister(HandleType.IMAGE_VIEW, imageView);
+
         vkDestroyImage(vkApplication.getDevice(), image, null);
-        vkFreeMemory(vkApplication.getDevice(), imageMemory, null);
+        vkApplication.getHandleTracker().unregister(HandleType.IMAGE, image);
+        vkApplication.getMemoryAllocator().free(allocation);
     }
 }
@@ -0,0 +1,94 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.vext.engine.util.BufferUtil;
+import ru.vext.engine.vulkan.VkApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class LinearAllocator {
+
+    public static final long CHUNK_SIZE = 1024 * 1024;
+    public static final long DEFAULT_ALIGNMENT = 16;
+
+    private static final int USAGE = VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT;
+
+    private final VkApplication vkApplication;
+    private final long chunkSize;
+
+    private final List<MappedBuffer> chunks = new ArrayList<>();
+
+    private int chunkIndex;
+    private long cursor;
+
+    public LinearAllocator(VkApplication vkApplication) {
+        this(vkApplication, CHUNK_SIZE);
+    }
+
+    public LinearAllocator(VkApplication vkApplication, long chunkSize) {
+        this.vkApplication = vkApplication;
+        this.chunkSize = chunkSize;
+    }
+
+    public synchronized BufferSlice allocate(long size, long alignment) {
+        while (chunkIndex < chunks.size()) {
+            MappedBuffer chunk = chunks.get(chunkIndex);
+            long offset = (cursor + alignment - 1) / alignment * alignment;
+
+            if (offset + size <= chunk.getSize()) {
+                cursor = offset + size;
+                chunk.markDirty(offset, size);
+                return new BufferSlice(chunk.getId(), offset, size, chunk.getAddress() + offset);
+            }
+
+            chunkIndex++;
+            cursor = 0;
+        }
+
+        MappedBuffer chunk = new MappedBuffer(vkApplication, Math.max(chunkSize, size), USAGE);
+        chunk.setMemoryCategory(MemoryCategory.TRANSIENT);
+        chunks.add(chunk);
+        log.debug("Linear allocator grew to {} chunks", chunks.size());
+
+        cursor = size;
+        chunk.markDirty(0, size);
+        return new BufferSlice(chunk.getId(), 0, size, chunk.getAddress());
+    }
+
+    public BufferSlice allocate(float[] data) {
+        BufferSlice slice = allocate((long) data.length * Float.BYTES, DEFAULT_ALIGNMENT);
+        BufferUtil.copy(data, slice.address());
+        return slice;
+    }
+
+    public BufferSlice allocate(float[] data, int length) {
+        BufferSlice slice = allocate((long) length * Float.BYTES, DEFAULT_ALIGNMENT);
+        BufferUtil.copy(data, length, slice.address());
+        return slice;
+    }
+
+    public BufferSlice allocate(int[] data) {
+        BufferSlice slice = allocate((long) data.length * Integer.BYTES, DEFAULT_ALIGNMENT);
+        BufferUtil.copy(data, slice.address());
+        return slice;
+    }
+
+    public synchronized void flush() {
+        chunks.forEach(MappedBuffer::flush);
+    }
+
+    public synchronized void reset() {
+        chunkIndex = 0;
+        cursor = 0;
+    }
+
+    public synchronized void cleanup() {
+        chunks.forEach(MemoryBuffer::cleanup);
+        chunks.clear();
+        reset();
+    }
+}
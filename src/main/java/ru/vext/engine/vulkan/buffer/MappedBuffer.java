@@ -0,0 +1,101 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkMappedMemoryRange;
+import ru.vext.engine.util.BufferUtil;
+import ru.vext.engine.vulkan.VkApplication;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.memCopy;
+import static org.lwjgl.vulkan.VK10.*;
+
+@Getter
+public class MappedBuffer extends MemoryBuffer {
+
+    private final long address;
+
+    private long dirtyStart = Long.MAX_VALUE;
+    private long dirtyEnd;
+
+    public MappedBuffer(VkApplication vkApplication, long size, int usage) {
+        super(vkApplication, size, usage, VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT, VK_MEMORY_PROPERTY_HOST_COHERENT_BIT);
+        this.address = getAllocation().getMappedAddress();
+    }
+
+    public void write(long offset, float[] data) {
+        checkRange(offset, (long) data.length * Float.BYTES);
+        BufferUtil.copy(data, address + offset);
+        markDirty(offset, (long) data.length * Float.BYTES);
+    }
+
+    public void write(long offset, int[] data) {
+        checkRange(offset, (long) data.length * Integer.BYTES);
+        BufferUtil.copy(data, address + offset);
+        markDirty(offset, (long) data.length * Integer.BYTES);
+    }
+
+    public void write(long offset, short[] data) {
+        checkRange(offset, (long) data.length * Short.BYTES);
+        BufferUtil.copy(data, address + offset);
+        markDirty(offset, (long) data.length * Short.BYTES);
+    }
+
+    public void write(long offset, ByteBuffer data) {
+        checkRange(offset, data.remaining());
+        BufferUtil.copy(data, address + offset);
+        markDirty(offset, data.remaining());
+    }
+
+    public void write(long offset, long source, long length) {
+        checkRange(offset, length);
+        memCopy(source, address + offset, length);
+        markDirty(offset, length);
+    }
+
+    public synchronized void markDirty(long offset, long length) {
+        dirtyStart = Math.min(dirtyStart, offset);
+        dirtyEnd = Math.max(dirtyEnd, offset + length);
+    }
+
+    public boolean isDirty() {
+        return dirtyStart < dirtyEnd;
+    }
+
+    public synchronized void flush() {
+        if (!isDirty()) {
+            return;
+        }
+
+        if (!getAllocation().isHostCoherent()) {
+            long atomSize = getVkApplication().getMemoryAllocator().getNonCoherentAtomSize();
+            MemoryBlock block = getAllocation().getBlock();
+
+            // Flush ranges are relative to the whole VkDeviceMemory and must be multiples of nonCoherentAtomSize
+            long start = (getAllocation().getOffset() + dirtyStart) / atomSize * atomSize;
+            long end = (getAllocation().getOffset() + dirtyEnd + atomSize - 1) / atomSize * atomSize;
+
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkMappedMemoryRange.Buffer range = VkMappedMemoryRange.calloc(1, stack);
+                range.sType(VK_STRUCTURE_TYPE_MAPPED_MEMORY_RANGE);
+                range.memory(block.getMemory());
+                range.offset(start);
+                range.size(end >= block.getSize() ? VK_WHOLE_SIZE : end - start);
+
+                if (vkFlushMappedMemoryRanges(getDevice(), range) != VK_SUCCESS) {
+                    throw new RuntimeException("Failed to flush mapped memory range");
+                }
+            }
+        }
+
+        dirtyStart = Long.MAX_VALUE;
+        dirtyEnd = 0;
+    }
+
+    private void checkRange(long offset, long length) {
+        if (offset < 0 || offset + length > getSize()) {
+            throw new IndexOutOfBoundsException("Write of " + length + " bytes at " + offset + " exceeds buffer size " + getSize());
+        }
+    }
+}
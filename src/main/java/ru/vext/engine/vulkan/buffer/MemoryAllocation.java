@@ -0,0 +1,45 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_HOST_COHERENT_BIT;
+
+@Getter
+@RequiredArgsConstructor
+public class MemoryAllocation {
+
+    private final MemoryBlock block;
+    private final long offset;
+    private final long size;
+
+    private MemoryCategory category = MemoryCategory.OTHER;
+
+    void setCategory(MemoryCategory category) {
+        this.category = category;
+    }
+
+    public long getMemory() {
+        return block.getMemory();
+    }
+
+    public int getMemoryProperties() {
+        return block.getMemoryProperties();
+    }
+
+    public boolean isMapped() {
+        return block.getMappedAddress() != NULL;
+    }
+
+    public boolean isHostCoherent() {
+        return (block.getMemoryProperties() & VK_MEMORY_PROPERTY_HOST_COHERENT_BIT) != 0;
+    }
+
+    public long getMappedAddress() {
+        if (!isMapped()) {
+            throw new IllegalStateException("Memory allocation is not host visible");
+        }
+        return block.getMappedAddress() + offset;
+    }
+}
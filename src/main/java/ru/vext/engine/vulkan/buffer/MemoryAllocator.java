@@ -0,0 +1,206 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkMemoryRequirements;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class MemoryAllocator {
+
+    public static final long BLOCK_SIZE = 32L * 1024 * 1024;
+
+    private final VkDevice device;
+    private final HandleTracker handleTracker;
+
+    @Getter
+    private final MemoryTracker tracker;
+
+    private final int[] memoryTypeProperties;
+
+    @Getter
+    private final long nonCoherentAtomSize;
+
+    private final Map<Integer, List<MemoryBlock>> pools = new HashMap<>();
+
+    public MemoryAllocator(VkApplication vkApplication) {
+        this.device = vkApplication.getDevice();
+        this.handleTracker = vkApplication.getHandleTracker();
+        this.tracker = new MemoryTracker(vkApplication);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceMemoryProperties memoryProperties = VkPhysicalDeviceMemoryProperties.malloc(stack);
+            vkGetPhysicalDeviceMemoryProperties(vkApplication.getPhysicalDevice(), memoryProperties);
+
+            memoryTypeProperties = new int[memoryProperties.memoryTypeCount()];
+            for (int i = 0; i < memoryTypeProperties.length; i++) {
+                memoryTypeProperties[i] = memoryProperties.memoryTypes(i).propertyFlags();
+            }
+
+            VkPhysicalDeviceProperties deviceProperties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(vkApplication.getPhysicalDevice(), deviceProperties);
+            nonCoherentAtomSize = deviceProperties.limits().nonCoherentAtomSize();
+        }
+    }
+
+    public MemoryAllocation allocateForBuffer(long buffer, int properties) {
+        return allocateForBuffer(buffer, properties, 0);
+    }
+
+    public MemoryAllocation allocateForBuffer(long buffer, int properties, int preferredProperties) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryRequirements memRequirements = VkMemoryRequirements.malloc(stack);
+            vkGetBufferMemoryRequirements(device, buffer, memRequirements);
+
+            MemoryAllocation allocation = allocate(memRequirements, properties, preferredProperties, true);
+            vkBindBufferMemory(device, buffer, allocation.getMemory(), allocation.getOffset());
+            return allocation;
+        }
+    }
+
+    public MemoryAllocation allocateForImage(long image, int properties) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryRequirements memRequirements = VkMemoryRequirements.malloc(stack);
+            vkGetImageMemoryRequirements(device, image, memRequirements);
+
+            MemoryAllocation allocation = allocate(memRequirements, properties, 0, false);
+            vkBindImageMemory(device, image, allocation.getMemory(), allocation.getOffset());
+            return allocation;
+        }
+    }
+
+    private synchronized MemoryAllocation allocate(VkMemoryRequirements memRequirements, int properties, int preferredProperties, boolean linear) {
+        int memoryTypeIndex = findMemoryType(memRequirements.memoryTypeBits(), properties | preferredProperties);
+        if (memoryTypeIndex < 0) {
+            memoryTypeIndex = findMemoryType(memRequirements.memoryTypeBits(), properties);
+        }
+        if (memoryTypeIndex < 0) {
+            throw new RuntimeException("Failed to find suitable memory type");
+        }
+
+        long size = memRequirements.size();
+        long alignment = memRequirements.alignment();
+
+        // Linear and optimal resources live in separate pools, so bufferImageGranularity never has to be honoured
+        List<MemoryBlock> pool = pools.computeIfAbsent(poolKey(memoryTypeIndex, linear), key -> new ArrayList<>());
+
+        tracker.allocated(MemoryCategory.OTHER, size);
+
+        if (size > BLOCK_SIZE / 2) {
+            MemoryBlock block = createBlock(pool, memoryTypeIndex, size, linear, true);
+            return new MemoryAllocation(block, block.allocate(size, alignment), size);
+        }
+
+        for (MemoryBlock block : pool) {
+            if (block.isDedicated()) {
+                continue;
+            }
+
+            long offset = block.allocate(size, alignment);
+            if (offset >= 0) {
+                return new MemoryAllocation(block, offset, size);
+            }
+        }
+
+        MemoryBlock block = createBlock(pool, memoryTypeIndex, BLOCK_SIZE, linear, false);
+        return new MemoryAllocation(block, block.allocate(size, alignment), size);
+    }
+
+    public synchronized void setCategory(MemoryAllocation allocation, MemoryCategory category) {
+        tracker.moved(allocation.getCategory(), category, allocation.getSize());
+        allocation.setCategory(category);
+    }
+
+    public synchronized void free(MemoryAllocation allocation) {
+        MemoryBlock block = allocation.getBlock();
+        block.free(allocation.getOffset(), allocation.getSize());
+        tracker.freed(allocation.getCategory(), allocation.getSize());
+
+        if (!block.isEmpty()) {
+            return;
+        }
+
+        List<MemoryBlock> pool = pools.get(poolKey(block.getMemoryTypeIndex(), block.isLinear()));
+        if (block.isDedicated() || pool.stream().filter(b -> !b.isDedicated()).count() > 1) {
+            pool.remove(block);
+            destroyBlock(block);
+        }
+    }
+
+    private MemoryBlock createBlock(List<MemoryBlock> pool, int memoryTypeIndex, long size, boolean linear, boolean dedicated) {
+        MemoryBlock block = new MemoryBlock(device, memoryTypeIndex, memoryTypeProperties[memoryTypeIndex], size, linear, dedicated);
+        pool.add(block);
+        handleTracker.register(HandleType.DEVICE_MEMORY, block.getMemory());
+        tracker.blockAllocated(size);
+
+        log.debug("Allocated {} memory block of {} bytes (type {})", dedicated ? "dedicated" : "shared", size, memoryTypeIndex);
+
+        return block;
+    }
+
+    private void destroyBlock(MemoryBlock block) {
+        handleTracker.unregister(HandleType.DEVICE_MEMORY, block.getMemory());
+        tracker.blockFreed(block.getSize());
+        block.cleanup();
+    }
+
+    private static int poolKey(int memoryTypeIndex, boolean linear) {
+        return memoryTypeIndex * 2 + (linear ? 0 : 1);
+    }
+
+    private int findMemoryType(int typeFilter, int properties) {
+        for (int i = 0; i < memoryTypeProperties.length; i++) {
+            if ((typeFilter & (1 << i)) != 0 && (memoryTypeProperties[i] & properties) == properties) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public synchronized Stats getStats() {
+        int blockCount = 0, allocationCount = 0;
+        long reservedBytes = 0, usedBytes = 0, freeBytes = 0, largestFreeRange = 0;
+
+        for (List<MemoryBlock> pool : pools.values()) {
+            for (MemoryBlock block : pool) {
+                blockCount++;
+                allocationCount += block.getAllocationCount();
+                reservedBytes += block.getSize();
+                usedBytes += block.getUsedBytes();
+                freeBytes += block.getSize() - block.getUsedBytes();
+                largestFreeRange = Math.max(largestFreeRange, block.getLargestFreeRange());
+            }
+        }
+
+        float fragmentation = freeBytes == 0 ? 0 : 1f - (float) largestFreeRange / freeBytes;
+
+        return new Stats(blockCount, allocationCount, reservedBytes, usedBytes, fragmentation);
+    }
+
+    public synchronized void cleanup() {
+        log.info("Device memory on shutdown: {}", getStats());
+        tracker.report();
+
+        for (List<MemoryBlock> pool : pools.values()) {
+            pool.forEach(this::destroyBlock);
+        }
+        pools.clear();
+    }
+
+    public record Stats(int blockCount, int allocationCount, long reservedBytes, long usedBytes, float fragmentation) {
+    }
+}
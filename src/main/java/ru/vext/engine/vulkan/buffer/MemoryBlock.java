@@ -0,0 +1,140 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.Getter;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkMemoryAllocateInfo;
+
+import java.nio.LongBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+@Getter
+public class MemoryBlock {
+
+    private final VkDevice device;
+
+    private final int memoryTypeIndex;
+    private final int memoryProperties;
+    private final long size;
+    private final boolean linear;
+    private final boolean dedicated;
+
+    private final long memory;
+    private final long mappedAddress;
+
+    private final TreeMap<Long, Long> freeRanges = new TreeMap<>();
+
+    private long usedBytes;
+    private int allocationCount;
+
+    public MemoryBlock(VkDevice device, int memoryTypeIndex, int memoryProperties, long size, boolean linear, boolean dedicated) {
+        this.device = device;
+        this.memoryTypeIndex = memoryTypeIndex;
+        this.memoryProperties = memoryProperties;
+        this.size = size;
+        this.linear = linear;
+        this.dedicated = dedicated;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryAllocateInfo allocateInfo = VkMemoryAllocateInfo.calloc(stack);
+            allocateInfo.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
+            allocateInfo.allocationSize(size);
+            allocateInfo.memoryTypeIndex(memoryTypeIndex);
+
+            LongBuffer pMemory = stack.mallocLong(1);
+            if (vkAllocateMemory(device, allocateInfo, null, pMemory) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate memory block of " + size + " bytes");
+            }
+            memory = pMemory.get(0);
+
+            if ((memoryProperties & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) != 0) {
+                PointerBuffer pMapped = stack.mallocPointer(1);
+                if (vkMapMemory(device, memory, 0, VK_WHOLE_SIZE, 0, pMapped) != VK_SUCCESS) {
+                    throw new RuntimeException("Failed to map memory block");
+                }
+                mappedAddress = pMapped.get(0);
+            } else {
+                mappedAddress = NULL;
+            }
+        }
+
+        freeRanges.put(0L, size);
+    }
+
+    public long allocate(long allocationSize, long alignment) {
+        for (Map.Entry<Long, Long> range : freeRanges.entrySet()) {
+            long start = range.getKey();
+            long end = start + range.getValue();
+            long alignedStart = align(start, alignment);
+
+            if (alignedStart + allocationSize > end) {
+                continue;
+            }
+
+            freeRanges.remove(start);
+            if (alignedStart > start) {
+                freeRanges.put(start, alignedStart - start);
+            }
+            if (alignedStart + allocationSize < end) {
+                freeRanges.put(alignedStart + allocationSize, end - alignedStart - allocationSize);
+            }
+
+            usedBytes += allocationSize;
+            allocationCount++;
+            return alignedStart;
+        }
+
+        return -1;
+    }
+
+    public void free(long offset, long allocationSize) {
+        long start = offset;
+        long length = allocationSize;
+
+        Map.Entry<Long, Long> previous = freeRanges.floorEntry(offset);
+        if (previous != null && previous.getKey() + previous.getValue() == offset) {
+            start = previous.getKey();
+            length += previous.getValue();
+            freeRanges.remove(previous.getKey());
+        }
+
+        Map.Entry<Long, Long> next = freeRanges.ceilingEntry(offset + allocationSize);
+        if (next != null && next.getKey() == offset + allocationSize) {
+            length += next.getValue();
+            freeRanges.remove(next.getKey());
+        }
+
+        freeRanges.put(start, length);
+
+        usedBytes -= allocationSize;
+        allocationCount--;
+    }
+
+    public boolean isEmpty() {
+        return allocationCount == 0;
+    }
+
+    public long getLargestFreeRange() {
+        long largest = 0;
+        for (long length : freeRanges.values()) {
+            largest = Math.max(largest, length);
+        }
+        return largest;
+    }
+
+    public void cleanup() {
+        if (mappedAddress != NULL) {
+            vkUnmapMemory(device, memory);
+        }
+        vkFreeMemory(device, memory, null);
+    }
+
+    private static long align(long value, long alignment) {
+        return (value + alignment - 1) / alignment * alignment;
+    }
+}
@@ -2,17 +2,20 @@ package ru.vext.engine.vulkan.buffer;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.vulkan.*;
 import ru.vext.engine.util.BufferUtil;
-import ru.vext.engine.util.VulkanUtil;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
+import ru.vext.engine.vulkan.upload.StagingPool;
+import ru.vext.engine.vulkan.upload.UploadFuture;
 
+import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
 
 import static org.lwjgl.vulkan.VK10.*;
-import static org.lwjgl.vulkan.VK10.vkUnmapMemory;
 
 @Slf4j
 @Getter
@@ -25,20 +28,27 @@ public class MemoryBuffer {
     private final int memoryType;
 
     private final long id;
-    private final long bufferMemory;
+    private final MemoryAllocation allocation;
 
-    private long size;
+    private final long size;
 
-    public MemoryBuffer(VkApplication vkApplication, Object[] data, int usage, int memoryType) {
+    private UploadFuture uploadFuture;
+
+    public MemoryBuffer(VkApplication vkApplication, long size, int usage, int memoryType) {
+        this(vkApplication, size, usage, memoryType, 0);
+    }
+
+    protected MemoryBuffer(VkApplication vkApplication, long size, int usage, int memoryType, int preferredMemoryType) {
         this.vkApplication = vkApplication;
         this.device = vkApplication.getDevice();
         this.usage = usage;
         this.memoryType = memoryType;
+        this.size = size;
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
             VkBufferCreateInfo bufferInfo = VkBufferCreateInfo.calloc(stack);
             bufferInfo.sType(VK_STRUCTURE_TYPE_BUFFER_CREATE_INFO);
-            bufferInfo.size(BufferUtil.getDataSize(data));
+            bufferInfo.size(size);
             bufferInfo.usage(usage);
             bufferInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
 
@@ -48,65 +58,73 @@ public class MemoryBuffer {
             }
 
             id = pVertexBuffer.get(0);
+            vkApplication.getHandleTracker().register(HandleType.BUFFER, id);
 
-            VkMemoryRequirements memRequirements = VkMemoryRequirements.calloc(stack);
-            vkGetBufferMemoryRequirements(device, id, memRequirements);
-
-            VkMemoryAllocateInfo memoryAllocate = VkMemoryAllocateInfo.calloc(stack);
-            memoryAllocate.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
-            memoryAllocate.allocationSize(memRequirements.size());
-            memoryAllocate.memoryTypeIndex(VulkanUtil.findMemoryType(stack, vkApplication.getPhysicalDevice(), memRequirements.memoryTypeBits(), memoryType));
+            allocation = vkApplication.getMemoryAllocator().allocateForBuffer(id, memoryType, preferredMemoryType);
+        }
+    }
 
-            LongBuffer pVertexBufferMemory = stack.mallocLong(1);
+    /**
+     * @deprecated boxes every element; use the primitive array or {@link ByteBuffer} constructors instead
+     */
+    @Deprecated
+    public MemoryBuffer(VkApplication vkApplication, Object[] data, int usage, int memoryType) {
+        this(vkApplication, BufferUtil.getDataSize(data), usage, memoryType);
+        writeData(address -> BufferUtil.fillBuffer(data, address));
+    }
 
-            if (vkAllocateMemory(device, memoryAllocate, null, pVertexBufferMemory) != VK_SUCCESS) {
-                throw new RuntimeException("Failed to allocate memory");
-            }
+    public MemoryBuffer(VkApplication vkApplication, float[] data, int usage, int memoryType) {
+        this(vkApplication, (long) data.length * Float.BYTES, usage, memoryType);
+        writeData(address -> BufferUtil.copy(data, address));
+    }
 
-            bufferMemory = pVertexBufferMemory.get(0);
+    public MemoryBuffer(VkApplication vkApplication, int[] data, int usage, int memoryType) {
+        this(vkApplication, (long) data.length * Integer.BYTES, usage, memoryType);
+        writeData(address -> BufferUtil.copy(data, address));
+    }
 
-            vkBindBufferMemory(device, id, bufferMemory, 0);
+    public MemoryBuffer(VkApplication vkApplication, short[] data, int usage, int memoryType) {
+        this(vkApplication, (long) data.length * Short.BYTES, usage, memoryType);
+        writeData(address -> BufferUtil.copy(data, address));
+    }
 
-            writeData(data, bufferInfo, stack);
-        }
+    public MemoryBuffer(VkApplication vkApplication, ByteBuffer data, int usage, int memoryType) {
+        this(vkApplication, data.remaining(), usage, memoryType);
+        writeData(address -> BufferUtil.copy(data, address));
     }
 
-    private void writeData(Object[] data, VkBufferCreateInfo bufferInfo, MemoryStack stack) {
-        size = BufferUtil.getDataSize(data);
+    public MemoryBuffer(VkApplication vkApplication, long address, long size, int usage, int memoryType) {
+        this(vkApplication, size, usage, memoryType);
+        writeData(dst -> MemoryUtil.memCopy(address, dst, size));
+    }
 
+    private void writeData(LongConsumer writer) {
         if ((memoryType & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) != 0) {
-            writeDataWithMapMemory(data, bufferInfo, stack);
+            writer.accept(allocation.getMappedAddress());
         } else {
-            writeDataWithStagingBuffer(data, stack);
+            writeDataWithStagingBuffer(writer);
         }
     }
 
-    private void writeDataWithMapMemory(Object[] data, VkBufferCreateInfo bufferInfo, MemoryStack stack) {
-        PointerBuffer pointerBuffer = stack.mallocPointer(1);
-        vkMapMemory(device, bufferMemory, 0, bufferInfo.size(), 0, pointerBuffer);
-        BufferUtil.fillBuffer(data, pointerBuffer);
-        vkUnmapMemory(device, bufferMemory);
-    }
-
-    private void writeDataWithStagingBuffer(Object[] data, MemoryStack stack) {
-        MemoryBuffer stagingBuffer = new MemoryBuffer(vkApplication, data, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, BufferType.MEMORY_TYPE_CPU_VISIBLE);
-
-        VkCommandBuffer commandBuffer = vkApplication.beginSingleTimeCommands();
-
-        VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack);
-        copyRegion.srcOffset(0);
-        copyRegion.dstOffset(0);
-        copyRegion.size(BufferUtil.getDataSize(data));
+    private void writeDataWithStagingBuffer(LongConsumer writer) {
+        StagingPool stagingPool = vkApplication.getStagingPool();
+        MappedBuffer stagingBuffer = stagingPool.acquire(size);
+        writer.accept(stagingBuffer.getAddress());
+        stagingBuffer.markDirty(0, size);
+        stagingBuffer.flush();
 
-        vkCmdCopyBuffer(commandBuffer, stagingBuffer.getId(), id, copyRegion);
-
-        vkApplication.endSingleTimeCommands(commandBuffer);
+        uploadFuture = vkApplication.getUploadScheduler()
+                .copyBuffer(stagingBuffer.getId(), 0, id, 0, size)
+                .thenRun(() -> stagingPool.release(stagingBuffer));
+    }
 
-        stagingBuffer.cleanup();
+    public void setMemoryCategory(MemoryCategory category) {
+        vkApplication.getMemoryAllocator().setCategory(allocation, category);
     }
 
     public void cleanup() {
         vkDestroyBuffer(device, id, null);
-        vkFreeMemory(device, bufferMemory, null);
+        vkApplication.getHandleTracker().unregister(HandleType.BUFFER, id);
+        vkApplication.getMemoryAllocator().free(allocation);
     }
 }
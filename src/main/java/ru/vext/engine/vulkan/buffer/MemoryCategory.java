@@ -0,0 +1,11 @@
+package ru.vext.engine.vulkan.buffer;
+
+public enum MemoryCategory {
+    FONT_ATLAS,
+    GLYPH_DATA,
+    GEOMETRY,
+    TRANSIENT,
+    UNIFORM,
+    STAGING,
+    OTHER
+}
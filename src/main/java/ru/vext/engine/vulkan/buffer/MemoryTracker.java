@@ -0,0 +1,182 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryBudgetPropertiesEXT;
+import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties2;
+import ru.vext.engine.vulkan.VkApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.EXTMemoryBudget.VK_EXT_MEMORY_BUDGET_EXTENSION_NAME;
+import static org.lwjgl.vulkan.EXTMemoryBudget.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_MEMORY_BUDGET_PROPERTIES_EXT;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_MEMORY_PROPERTIES_2_KHR;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.vkGetPhysicalDeviceMemoryProperties2KHR;
+
+@Slf4j
+public class MemoryTracker {
+
+    public static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private static final int CATEGORY_COUNT = MemoryCategory.values().length;
+
+    private final VkApplication vkApplication;
+    private final boolean budgetSupported;
+
+    private final long[] currentBytes = new long[CATEGORY_COUNT];
+    private final long[] peakBytes = new long[CATEGORY_COUNT];
+    private final long[] frameHighWaterBytes = new long[CATEGORY_COUNT];
+
+    private long totalBytes, peakTotalBytes, frameHighWaterTotalBytes;
+
+    // Device memory actually reserved through vkAllocateMemory, including the unused tails of shared blocks
+    private long reservedBytes, peakReservedBytes;
+
+    private long frameNumber;
+    private long lastReportTime = System.nanoTime();
+
+    public MemoryTracker(VkApplication vkApplication) {
+        this.vkApplication = vkApplication;
+        this.budgetSupported = vkApplication.isDeviceExtensionEnabled(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME)
+                && vkApplication.getInstance().getCapabilities().vkGetPhysicalDeviceMemoryProperties2KHR != NULL;
+    }
+
+    synchronized void allocated(MemoryCategory category, long size) {
+        int index = category.ordinal();
+
+        currentBytes[index] += size;
+        peakBytes[index] = Math.max(peakBytes[index], currentBytes[index]);
+        frameHighWaterBytes[index] = Math.max(frameHighWaterBytes[index], currentBytes[index]);
+
+        totalBytes += size;
+        peakTotalBytes = Math.max(peakTotalBytes, totalBytes);
+        frameHighWaterTotalBytes = Math.max(frameHighWaterTotalBytes, totalBytes);
+    }
+
+    synchronized void freed(MemoryCategory category, long size) {
+        currentBytes[category.ordinal()] -= size;
+        totalBytes -= size;
+    }
+
+    synchronized void blockAllocated(long size) {
+        reservedBytes += size;
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+    }
+
+    synchronized void blockFreed(long size) {
+        reservedBytes -= size;
+    }
+
+    synchronized void moved(MemoryCategory from, MemoryCategory to, long size) {
+        freed(from, size);
+        allocated(to, size);
+    }
+
+    public synchronized long getCurrentBytes(MemoryCategory category) {
+        return currentBytes[category.ordinal()];
+    }
+
+    public synchronized long getPeakBytes(MemoryCategory category) {
+        return peakBytes[category.ordinal()];
+    }
+
+    public synchronized long getFrameHighWaterBytes(MemoryCategory category) {
+        return frameHighWaterBytes[category.ordinal()];
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getPeakTotalBytes() {
+        return peakTotalBytes;
+    }
+
+    public synchronized long getFrameHighWaterTotalBytes() {
+        return frameHighWaterTotalBytes;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long getPeakReservedBytes() {
+        return peakReservedBytes;
+    }
+
+    public boolean isBudgetSupported() {
+        return budgetSupported;
+    }
+
+    public List<HeapBudget> queryBudget() {
+        List<HeapBudget> heaps = new ArrayList<>();
+        if (!budgetSupported) {
+            return heaps;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceMemoryBudgetPropertiesEXT budgetProperties = VkPhysicalDeviceMemoryBudgetPropertiesEXT.calloc(stack);
+            budgetProperties.sType(VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_MEMORY_BUDGET_PROPERTIES_EXT);
+
+            VkPhysicalDeviceMemoryProperties2 memoryProperties = VkPhysicalDeviceMemoryProperties2.calloc(stack);
+            memoryProperties.sType(VK_STRUCTURE_TYPE_PHYSICAL_DEVICE_MEMORY_PROPERTIES_2_KHR);
+            memoryProperties.pNext(budgetProperties.address());
+
+            vkGetPhysicalDeviceMemoryProperties2KHR(vkApplication.getPhysicalDevice(), memoryProperties);
+
+            int heapCount = memoryProperties.memoryProperties().memoryHeapCount();
+            for (int i = 0; i < heapCount; i++) {
+                heaps.add(new HeapBudget(i, budgetProperties.heapUsage(i), budgetProperties.heapBudget(i)));
+            }
+        }
+
+        return heaps;
+    }
+
+    public synchronized void endFrame() {
+        frameNumber++;
+
+        long now = System.nanoTime();
+        if (now - lastReportTime >= REPORT_INTERVAL_NANOS) {
+            lastReportTime = now;
+            report();
+        }
+
+        System.arraycopy(currentBytes, 0, frameHighWaterBytes, 0, CATEGORY_COUNT);
+        frameHighWaterTotalBytes = totalBytes;
+    }
+
+    public synchronized void report() {
+        StringBuilder categories = new StringBuilder();
+        for (MemoryCategory category : MemoryCategory.values()) {
+            long current = currentBytes[category.ordinal()];
+            if (current == 0 && peakBytes[category.ordinal()] == 0) {
+                continue;
+            }
+            if (!categories.isEmpty()) {
+                categories.append(", ");
+            }
+            categories.append(category).append(' ').append(toMiB(current))
+                    .append(" (peak ").append(toMiB(peakBytes[category.ordinal()])).append(')');
+        }
+
+        StringBuilder heaps = new StringBuilder();
+        for (HeapBudget heap : queryBudget()) {
+            heaps.append(" heap").append(heap.heapIndex()).append(' ')
+                    .append(toMiB(heap.usage())).append('/').append(toMiB(heap.budget()));
+        }
+
+        log.info("GPU memory at frame {}: {} (peak {}, frame max {}), reserved {} (peak {}) [{}]{}",
+                frameNumber, toMiB(totalBytes), toMiB(peakTotalBytes), toMiB(frameHighWaterTotalBytes),
+                toMiB(reservedBytes), toMiB(peakReservedBytes), categories, heaps.isEmpty() ? "" : ";" + heaps);
+    }
+
+    private static String toMiB(long bytes) {
+        return String.format("%.2f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    public record HeapBudget(int heapIndex, long usage, long budget) {
+    }
+}
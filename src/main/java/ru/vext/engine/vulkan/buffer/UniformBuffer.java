@@ -6,26 +6,30 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.vulkan.*;
 import ru.vext.engine.util.BufferUtil;
-import ru.vext.engine.util.VulkanUtil;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
 
+import java.nio.ByteBuffer;
 import java.nio.LongBuffer;
 
 import static org.lwjgl.vulkan.VK10.*;
-import static org.lwjgl.vulkan.VK10.vkFreeMemory;
 
 public class UniformBuffer {
 
+    private final VkApplication vkApplication;
     private final VkDevice device;
     @Getter
     private final int size;
 
     @Getter
-    private final long id, bufferMemory;
+    private final long id;
+    @Getter
+    private final MemoryAllocation allocation;
     @Getter
     private final PointerBuffer mappedBuffer;
 
     public UniformBuffer(VkApplication vkApplication, int size) {
+        this.vkApplication = vkApplication;
         this.device = vkApplication.getDevice();
         this.size = size;
 
@@ -42,36 +46,60 @@ public class UniformBuffer {
             }
 
             id = pVertexBuffer.get(0);
+            vkApplication.getHandleTracker().register(HandleType.BUFFER, id);
 
-            VkMemoryRequirements memRequirements = VkMemoryRequirements.calloc(stack);
-            vkGetBufferMemoryRequirements(device, id, memRequirements);
+            allocation = vkApplication.getMemoryAllocator().allocateForBuffer(id, BufferType.MEMORY_TYPE_CPU_VISIBLE);
+            vkApplication.getMemoryAllocator().setCategory(allocation, MemoryCategory.UNIFORM);
 
-            VkMemoryAllocateInfo memoryAllocate = VkMemoryAllocateInfo.calloc(stack);
-            memoryAllocate.sType(VK_STRUCTURE_TYPE_MEMORY_ALLOCATE_INFO);
-            memoryAllocate.allocationSize(memRequirements.size());
-            memoryAllocate.memoryTypeIndex(VulkanUtil.findMemoryType(stack, vkApplication.getPhysicalDevice(), memRequirements.memoryTypeBits(), BufferType.MEMORY_TYPE_CPU_VISIBLE));
+            mappedBuffer = MemoryUtil.memAllocPointer(1);
+            mappedBuffer.put(0, allocation.getMappedAddress());
+        }
+    }
 
-            LongBuffer pVertexBufferMemory = stack.mallocLong(1);
+    /**
+     * @deprecated boxes every element; use the primitive array or {@link ByteBuffer} overloads instead
+     */
+    @Deprecated
+    public void writeData(Object[] data) {
+        checkSize(BufferUtil.getDataSize(data));
+        BufferUtil.fillBuffer(data, mappedBuffer);
+    }
 
-            if (vkAllocateMemory(device, memoryAllocate, null, pVertexBufferMemory) != VK_SUCCESS) {
-                throw new RuntimeException("Failed to allocate memory");
-            }
+    public void writeData(float[] data) {
+        checkSize((long) data.length * Float.BYTES);
+        BufferUtil.copy(data, mappedBuffer.get(0));
+    }
 
-            bufferMemory = pVertexBufferMemory.get(0);
+    public void writeData(int[] data) {
+        checkSize((long) data.length * Integer.BYTES);
+        BufferUtil.copy(data, mappedBuffer.get(0));
+    }
 
-            vkBindBufferMemory(device, id, bufferMemory, 0);
+    public void writeData(short[] data) {
+        checkSize((long) data.length * Short.BYTES);
+        BufferUtil.copy(data, mappedBuffer.get(0));
+    }
 
-            mappedBuffer = MemoryUtil.memAllocPointer(size);
-            vkMapMemory(device, bufferMemory, 0, bufferInfo.size(), 0, mappedBuffer);
-        }
+    public void writeData(ByteBuffer data) {
+        checkSize(data.remaining());
+        BufferUtil.copy(data, mappedBuffer.get(0));
     }
 
-    public void writeData(Object[] data) {
-        BufferUtil.fillBuffer(data, mappedBuffer);
+    public void writeData(long address, long length) {
+        checkSize(length);
+        MemoryUtil.memCopy(address, mappedBuffer.get(0), length);
+    }
+
+    private void checkSize(long length) {
+        if (length < 0 || length > size) {
+            throw new IndexOutOfBoundsException("Write of " + length + " bytes exceeds uniform buffer size " + size);
+        }
     }
 
     public void cleanup() {
         vkDestroyBuffer(device, id, null);
-        vkFreeMemory(device, bufferMemory, null);
+        vkApplication.getHandleTracker().unregister(HandleType.BUFFER, id);
+        vkApplication.getMemoryAllocator().free(allocation);
+        MemoryUtil.memFree(mappedBuffer);
     }
 }
@@ -0,0 +1,54 @@
+package ru.vext.engine.vulkan.buffer;
+
+import lombok.Getter;
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+import ru.vext.engine.vulkan.VkApplication;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+// Per-frame-in-flight uniform storage, cycled with the frames: frame globals and the transform table at fixed offsets
+@Getter
+public class UniformRing {
+
+    public static final long FRAME_GLOBALS_OFFSET = 0;
+    public static final int MAX_DAMAGE_RECTS = 8;
+    // std140: mat4 projection, vec4 viewport (width, height, 1 / width, 1 / height), float time, int damage count,
+    // padded to 16 bytes, then vec4 damage rects (minX, minY, maxX, maxY)
+    public static final long FRAME_GLOBALS_SIZE = 16 * Float.BYTES + 4 * Float.BYTES + 4 * Float.BYTES + MAX_DAMAGE_RECTS * 4 * Float.BYTES;
+
+    // Table of mat4 transforms indexed by a push-constant slot; slot 0 is always identity
+    public static final long TRANSFORMS_OFFSET = 256;
+    public static final int MAX_TRANSFORMS = 1024;
+    public static final long TRANSFORMS_SIZE = (long) MAX_TRANSFORMS * 16 * Float.BYTES;
+
+    // TRANSFORMS_OFFSET is a multiple of 256, the largest uniform and storage offset alignment Vulkan allows
+    public static final long SIZE = TRANSFORMS_OFFSET + TRANSFORMS_SIZE;
+
+    private static final int USAGE = VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT;
+
+    private final MappedBuffer buffer;
+
+    public UniformRing(VkApplication vkApplication) {
+        buffer = new MappedBuffer(vkApplication, SIZE, USAGE);
+        buffer.setMemoryCategory(MemoryCategory.UNIFORM);
+    }
+
+    public void writeFrameGlobals(float[] data) {
+        buffer.write(FRAME_GLOBALS_OFFSET, data);
+    }
+
+    public void writeTransform(int slot, Matrix4f matrix) {
+        long offset = TRANSFORMS_OFFSET + (long) slot * 16 * Float.BYTES;
+        matrix.get(MemoryUtil.memByteBuffer(buffer.getAddress() + offset, 16 * Float.BYTES));
+        buffer.markDirty(offset, 16 * Float.BYTES);
+    }
+
+    public void flush() {
+        buffer.flush();
+    }
+
+    public void cleanup() {
+        buffer.cleanup();
+    }
+}
@@ -0,0 +1,220 @@
+package ru.vext.engine.vulkan.debug;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import ru.vext.engine.vulkan.VkApplication;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class GpuProfiler {
+
+    public static final String ENABLE_PROPERTY = "vext.gpuProfiler";
+
+    public static final long REPORT_INTERVAL_NANOS = 10_000_000_000L;
+
+    private static final int MAX_QUERIES = 512;
+    private static final int AVERAGE_WINDOW = 120;
+
+    private final VkApplication vkApplication;
+
+    @Getter
+    private final boolean enabled;
+
+    private final double timestampPeriod;
+    private final long timestampMask;
+
+    private final long[] queryPools;
+    private final List<List<Scope>> frameScopes = new ArrayList<>();
+    private final int[] queryCounts;
+
+    private final Map<String, RollingAverage> averages = new LinkedHashMap<>();
+    private final Map<String, Double> frameTotals = new HashMap<>();
+
+    private long lastReportTime = System.nanoTime();
+
+    public GpuProfiler(VkApplication vkApplication, int maxFramesInFlight) {
+        this.vkApplication = vkApplication;
+
+        queryPools = new long[maxFramesInFlight];
+        queryCounts = new int[maxFramesInFlight];
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(vkApplication.getPhysicalDevice(), properties);
+            timestampPeriod = properties.limits().timestampPeriod();
+
+            int validBits = getTimestampValidBits(stack);
+            timestampMask = validBits >= 64 ? -1L : (1L << validBits) - 1;
+
+            // Timestamps are written on the graphics queue, which has to report at least some valid bits
+            enabled = Boolean.getBoolean(ENABLE_PROPERTY) && validBits > 0;
+            if (Boolean.getBoolean(ENABLE_PROPERTY) && !enabled) {
+                log.warn("GPU profiler disabled: the graphics queue does not support timestamps");
+            }
+
+            if (!enabled) {
+                return;
+            }
+
+            VkQueryPoolCreateInfo poolInfo = VkQueryPoolCreateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_QUERY_POOL_CREATE_INFO)
+                    .queryType(VK_QUERY_TYPE_TIMESTAMP)
+                    .queryCount(MAX_QUERIES);
+
+            LongBuffer pQueryPool = stack.mallocLong(1);
+            for (int i = 0; i < maxFramesInFlight; i++) {
+                if (vkCreateQueryPool(vkApplication.getDevice(), poolInfo, null, pQueryPool) != VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create timestamp query pool");
+                }
+                queryPools[i] = pQueryPool.get(0);
+                vkApplication.getHandleTracker().register(HandleType.QUERY_POOL, queryPools[i]);
+                frameScopes.add(new ArrayList<>());
+            }
+        }
+
+        log.info("GPU profiler enabled, timestamp period {} ns", timestampPeriod);
+    }
+
+    private int getTimestampValidBits(MemoryStack stack) {
+        VkPhysicalDevice physicalDevice = vkApplication.getPhysicalDevice();
+
+        IntBuffer pCount = stack.ints(0);
+        vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, pCount, null);
+        VkQueueFamilyProperties.Buffer families = VkQueueFamilyProperties.malloc(pCount.get(0), stack);
+        vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, pCount, families);
+
+        return families.get(vkApplication.getQueueFamilyIndices().getGraphicsFamily()).timestampValidBits();
+    }
+
+    // Must be recorded outside a render pass, once the frame slot's fence has been waited on
+    public void beginFrame(VkCommandBuffer commandBuffer, int frameIndex) {
+        if (!enabled) {
+            return;
+        }
+
+        collect(frameIndex);
+
+        vkCmdResetQueryPool(commandBuffer, queryPools[frameIndex], 0, MAX_QUERIES);
+        queryCounts[frameIndex] = 0;
+        frameScopes.get(frameIndex).clear();
+    }
+
+    public int beginScope(VkCommandBuffer commandBuffer, int frameIndex, String name) {
+        if (!enabled || queryCounts[frameIndex] + 2 > MAX_QUERIES) {
+            return -1;
+        }
+
+        int start = queryCounts[frameIndex];
+        queryCounts[frameIndex] += 2;
+
+        List<Scope> scopes = frameScopes.get(frameIndex);
+        scopes.add(new Scope(name, start));
+
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPools[frameIndex], start);
+        return scopes.size() - 1;
+    }
+
+    public void endScope(VkCommandBuffer commandBuffer, int frameIndex, int scope) {
+        if (!enabled || scope < 0) {
+            return;
+        }
+
+        Scope s = frameScopes.get(frameIndex).get(scope);
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPools[frameIndex], s.startQuery() + 1);
+    }
+
+    private void collect(int frameIndex) {
+        List<Scope> scopes = frameScopes.get(frameIndex);
+        int queryCount = queryCounts[frameIndex];
+        if (scopes.isEmpty()) {
+            return;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            // Value and availability per query; never waits, a query that is not ready is simply skipped
+            LongBuffer results = stack.mallocLong(queryCount * 2);
+            vkGetQueryPoolResults(vkApplication.getDevice(), queryPools[frameIndex], 0, queryCount, results, 2 * Long.BYTES,
+                    VK_QUERY_RESULT_64_BIT | VK_QUERY_RESULT_WITH_AVAILABILITY_BIT);
+
+            frameTotals.clear();
+            for (Scope scope : scopes) {
+                int start = scope.startQuery(), end = start + 1;
+                if (results.get(start * 2 + 1) == 0 || results.get(end * 2 + 1) == 0) {
+                    continue;
+                }
+
+                long ticks = (results.get(end * 2) - results.get(start * 2)) & timestampMask;
+                frameTotals.merge(scope.name(), ticks * timestampPeriod / 1e6, Double::sum);
+            }
+        }
+
+        synchronized (averages) {
+            frameTotals.forEach((name, millis) -> averages.computeIfAbsent(name, key -> new RollingAverage()).add(millis));
+        }
+
+        long now = System.nanoTime();
+        if (now - lastReportTime >= REPORT_INTERVAL_NANOS) {
+            lastReportTime = now;
+            report();
+        }
+    }
+
+    public Map<String, Double> getAverages() {
+        Map<String, Double> result = new LinkedHashMap<>();
+        synchronized (averages) {
+            averages.forEach((name, average) -> result.put(name, average.get()));
+        }
+        return result;
+    }
+
+    public void report() {
+        StringBuilder scopes = new StringBuilder();
+        getAverages().forEach((name, millis) -> {
+            if (!scopes.isEmpty()) {
+                scopes.append(", ");
+            }
+            scopes.append(name).append(' ').append(String.format("%.3f ms", millis));
+        });
+
+        log.info("GPU time over the last {} frames: [{}]", AVERAGE_WINDOW, scopes);
+    }
+
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+
+        for (long queryPool : queryPools) {
+            vkDestroyQueryPool(vkApplication.getDevice(), queryPool, null);
+            vkApplication.getHandleTracker().unregister(HandleType.QUERY_POOL, queryPool);
+        }
+    }
+
+    private record Scope(String name, int startQuery) {
+    }
+
+    private static class RollingAverage {
+
+        private final double[] samples = new double[AVERAGE_WINDOW];
+        private int count, next;
+        private double sum;
+
+        void add(double value) {
+            sum += value - samples[next];
+            samples[next] = value;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        double get() {
+            return count == 0 ? 0 : sum / count;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ru.vext.engine.vulkan.debug;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+public class HandleTracker {
+
+    public static final String ENABLE_PROPERTY = "vext.trackHandles";
+
+    @Getter
+    private final boolean enabled;
+
+    private final Map<HandleType, Map<Long, Origin>> liveHandles = new EnumMap<>(HandleType.class);
+    private final Map<HandleType, Integer> lastCounts = new EnumMap<>(HandleType.class);
+
+    @Getter
+    private long frameNumber;
+
+    public HandleTracker() {
+        this(Boolean.getBoolean(ENABLE_PROPERTY));
+    }
+
+    public HandleTracker(boolean enabled) {
+        this.enabled = enabled;
+
+        for (HandleType type : HandleType.values()) {
+            liveHandles.put(type, new HashMap<>());
+        }
+
+        if (enabled) {
+            log.info("Vulkan handle tracking enabled");
+        }
+    }
+
+    public void register(HandleType type, long handle) {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            Origin previous = liveHandles.get(type).put(handle, new Origin(frameNumber, new Throwable("Created at frame " + frameNumber)));
+            if (previous != null) {
+                log.warn("{} 0x{} registered twice, first created at frame {}", type, Long.toHexString(handle), previous.frame());
+            }
+        }
+    }
+
+    public void unregister(HandleType type, long handle) {
+        if (!enabled) {
+            return;
+        }
+
+        synchronized (this) {
+            if (liveHandles.get(type).remove(handle) == null) {
+                log.warn("Destroying untracked {} 0x{}", type, Long.toHexString(handle));
+            }
+        }
+    }
+
+    public synchronized int getLiveCount(HandleType type) {
+        return liveHandles.get(type).size();
+    }
+
+    public synchronized Map<HandleType, Integer> getLiveCounts() {
+        Map<HandleType, Integer> counts = new EnumMap<>(HandleType.class);
+        liveHandles.forEach((type, handles) -> counts.put(type, handles.size()));
+        return counts;
+    }
+
+    public synchronized void nextFrame() {
+        frameNumber++;
+
+        if (!enabled) {
+            return;
+        }
+
+        Map<HandleType, Integer> counts = getLiveCounts();
+        log.debug("Live Vulkan handles at frame {}: {}", frameNumber, counts);
+
+        if (!counts.equals(lastCounts)) {
+            counts.forEach((type, count) -> {
+                int difference = count - lastCounts.getOrDefault(type, 0);
+                if (difference != 0 && !lastCounts.isEmpty()) {
+                    log.info("{} count changed by {} to {} at frame {}", type, difference, count, frameNumber);
+                }
+            });
+            lastCounts.clear();
+            lastCounts.putAll(counts);
+        }
+    }
+
+    public synchronized int reportLeaks() {
+        if (!enabled) {
+            return 0;
+        }
+
+        int leaks = 0;
+        for (Map.Entry<HandleType, Map<Long, Origin>> entry : liveHandles.entrySet()) {
+            for (Map.Entry<Long, Origin> handle : entry.getValue().entrySet()) {
+                log.warn("Leaked {} 0x{} created at frame {}", entry.getKey(), Long.toHexString(handle.getKey()), handle.getValue().frame(), handle.getValue().stackTrace());
+                leaks++;
+            }
+        }
+
+        if (leaks == 0) {
+            log.info("No leaked Vulkan handles");
+        } else {
+            log.warn("{} Vulkan handles leaked: {}", leaks, getLiveCounts());
+        }
+
+        return leaks;
+    }
+
+    private record Origin(long frame, Throwable stackTrace) {
+    }
+}
@@ -0,0 +1,22 @@
+package ru.vext.engine.vulkan.debug;
+
+public enum HandleType {
+    BUFFER,
+    DEVICE_MEMORY,
+    IMAGE,
+    IMAGE_VIEW,
+    SAMPLER,
+    PIPELINE,
+    PIPELINE_CACHE,
+    QUERY_POOL,
+    PIPELINE_LAYOUT,
+    DESCRIPTOR_POOL,
+    DESCRIPTOR_SET_LAYOUT,
+    RENDER_PASS,
+    FRAMEBUFFER,
+    SWAPCHAIN,
+    COMMAND_POOL,
+    COMMAND_BUFFER,
+    FENCE,
+    SEMAPHORE
+}
@@ -9,17 +9,22 @@ import org.lwjgl.vulkan.*;
 
 import java.nio.IntBuffer;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.lwjgl.glfw.GLFWVulkan.glfwGetRequiredInstanceExtensions;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
 import static org.lwjgl.vulkan.VK10.VK_SUCCESS;
 
 @Slf4j
 public class InstanceFabric {
+
+    private static final Set<String> OPTIONAL_EXTENSIONS = Set.of(VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME);
+
     public VkInstance createInstance(boolean enableValidationLayers, Collection<String> validationLayers) {
         if (enableValidationLayers && !checkValidationLayerSupport(validationLayers))
             throw new RuntimeException("Validation requested but not supported");
@@ -72,17 +77,29 @@ public class InstanceFabric {
 
     private PointerBuffer getRequiredExtensions(MemoryStack stack, boolean enableValidationLayers) {
         PointerBuffer glfwExtensions = glfwGetRequiredInstanceExtensions();
+        assert glfwExtensions != null;
 
-        if (enableValidationLayers) {
-            assert glfwExtensions != null;
-            PointerBuffer extensions = stack.mallocPointer(glfwExtensions.capacity() + 1);
+        Set<String> availableExtensions = getAvailableExtensions(stack);
+        List<String> optionalExtensions = OPTIONAL_EXTENSIONS.stream().filter(availableExtensions::contains).toList();
 
-            extensions.put(glfwExtensions);
-            extensions.put(stack.UTF8(VK_EXT_DEBUG_UTILS_EXTENSION_NAME));
+        PointerBuffer extensions = stack.mallocPointer(glfwExtensions.capacity() + optionalExtensions.size() + (enableValidationLayers ? 1 : 0));
+
+        extensions.put(glfwExtensions);
+        optionalExtensions.forEach(extension -> extensions.put(stack.UTF8(extension)));
 
-            return extensions.rewind();
+        if (enableValidationLayers) {
+            extensions.put(stack.UTF8(VK_EXT_DEBUG_UTILS_EXTENSION_NAME));
         }
 
-        return glfwExtensions;
+        return extensions.rewind();
+    }
+
+    private Set<String> getAvailableExtensions(MemoryStack stack) {
+        IntBuffer extensionCount = stack.ints(0);
+        vkEnumerateInstanceExtensionProperties((String) null, extensionCount, null);
+        VkExtensionProperties.Buffer availableExtensions = VkExtensionProperties.malloc(extensionCount.get(0), stack);
+        vkEnumerateInstanceExtensionProperties((String) null, extensionCount, availableExtensions);
+
+        return availableExtensions.stream().map(VkExtensionProperties::extensionNameString).collect(Collectors.toSet());
     }
 }
@@ -0,0 +1,247 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import ru.vext.engine.vulkan.debug.GpuProfiler;
+import ru.vext.engine.vulkan.swapchain.pipeline.descriptor.DescriptorPool;
+import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class CommandRecorder {
+
+    private static final int[] NO_DYNAMIC_OFFSETS = new int[0];
+
+    @Getter
+    private VkCommandBuffer commandBuffer;
+    private int frameIndex;
+
+    private long boundPipeline;
+    private long boundPipelineLayout;
+    private long boundDescriptorSet;
+    // Two buffers swapped after every descriptor bind, so offsets are compared and passed on without allocating
+    private int[] boundDynamicOffsets = NO_DYNAMIC_OFFSETS;
+    private int[] pendingDynamicOffsets = NO_DYNAMIC_OFFSETS;
+
+    private long pushLayout;
+    private int pushStageFlags;
+    private float[] pushData = new float[0];
+
+    private final long[] boundVertexBuffers = new long[2];
+    private final long[] boundVertexOffsets = new long[2];
+    private long boundIndexBuffer;
+    private long boundIndexOffset;
+
+    private final long[] descriptorSets = new long[1];
+
+    private final Stats stats = new Stats();
+
+    private GpuProfiler profiler;
+
+    public void begin(VkCommandBuffer commandBuffer, int frameIndex) {
+        this.commandBuffer = commandBuffer;
+        this.frameIndex = frameIndex;
+        this.profiler = null;
+
+        boundPipeline = VK_NULL_HANDLE;
+        boundPipelineLayout = VK_NULL_HANDLE;
+        boundDescriptorSet = VK_NULL_HANDLE;
+        pushLayout = VK_NULL_HANDLE;
+        Arrays.fill(boundVertexBuffers, VK_NULL_HANDLE);
+        Arrays.fill(boundVertexOffsets, 0);
+        boundIndexBuffer = VK_NULL_HANDLE;
+        boundIndexOffset = 0;
+    }
+
+    // Only set for primary command buffers, cached secondaries would replay stale query indices
+    public void setProfiler(GpuProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    public int beginScope(String name) {
+        return profiler == null ? -1 : profiler.beginScope(commandBuffer, frameIndex, name);
+    }
+
+    public void endScope(int scope) {
+        if (profiler != null) {
+            profiler.endScope(commandBuffer, frameIndex, scope);
+        }
+    }
+
+    public void resetStats() {
+        stats.reset();
+    }
+
+    public void bindPipeline(GraphicsPipeline pipeline) {
+        bindPipeline(pipeline, NO_DYNAMIC_OFFSETS);
+    }
+
+    public void bindPipeline(GraphicsPipeline pipeline, int... dynamicOffsets) {
+        if (boundPipeline != pipeline.getId()) {
+            vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getId());
+            boundPipeline = pipeline.getId();
+            stats.pipelineBinds++;
+        } else {
+            stats.pipelineBindsSkipped++;
+        }
+
+        if (boundPipelineLayout != pipeline.getPipelineLayout()) {
+            // Push constants and descriptor sets are only guaranteed to survive between compatible layouts
+            boundPipelineLayout = pipeline.getPipelineLayout();
+            boundDescriptorSet = VK_NULL_HANDLE;
+            pushLayout = VK_NULL_HANDLE;
+        }
+
+        DescriptorPool descriptorPool = pipeline.getDescriptorPool();
+        if (descriptorPool == null) {
+            return;
+        }
+
+        long descriptorSet = descriptorPool.getDescriptorSets()[frameIndex];
+
+        // Offsets not given by the caller are zero
+        int count = descriptorPool.getDynamicBindingCount();
+        if (pendingDynamicOffsets.length != count) {
+            pendingDynamicOffsets = new int[count];
+        }
+        int given = Math.min(count, dynamicOffsets.length);
+        System.arraycopy(dynamicOffsets, 0, pendingDynamicOffsets, 0, given);
+        Arrays.fill(pendingDynamicOffsets, given, count, 0);
+
+        if (boundDescriptorSet == descriptorSet && Arrays.equals(boundDynamicOffsets, pendingDynamicOffsets)) {
+            stats.descriptorBindsSkipped++;
+            return;
+        }
+
+        descriptorSets[0] = descriptorSet;
+        vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, boundPipelineLayout, 0, descriptorSets,
+                count == 0 ? null : pendingDynamicOffsets);
+
+        int[] previous = boundDynamicOffsets;
+        boundDescriptorSet = descriptorSet;
+        boundDynamicOffsets = pendingDynamicOffsets;
+        pendingDynamicOffsets = previous;
+        stats.descriptorBinds++;
+    }
+
+    public void pushConstants(int stageFlags, float... data) {
+        if (pushLayout == boundPipelineLayout && pushStageFlags == stageFlags && Arrays.equals(pushData, data)) {
+            stats.pushConstantsSkipped++;
+            return;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            FloatBuffer buffer = stack.floats(data);
+            vkCmdPushConstants(commandBuffer, boundPipelineLayout, stageFlags, 0, buffer);
+        }
+
+        pushLayout = boundPipelineLayout;
+        pushStageFlags = stageFlags;
+        pushData = data;
+        stats.pushConstants++;
+    }
+
+    public void bindVertexBuffer(int binding, long buffer, long offset) {
+        if (boundVertexBuffers[binding] == buffer && boundVertexOffsets[binding] == offset) {
+            stats.vertexBindsSkipped++;
+            return;
+        }
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdBindVertexBuffers(commandBuffer, binding, stack.longs(buffer), stack.longs(offset));
+        }
+
+        boundVertexBuffers[binding] = buffer;
+        boundVertexOffsets[binding] = offset;
+        stats.vertexBinds++;
+    }
+
+    public void bindIndexBuffer(long buffer, long offset) {
+        if (boundIndexBuffer == buffer && boundIndexOffset == offset) {
+            stats.vertexBindsSkipped++;
+            return;
+        }
+
+        vkCmdBindIndexBuffer(commandBuffer, buffer, offset, VK_INDEX_TYPE_UINT16);
+
+        boundIndexBuffer = buffer;
+        boundIndexOffset = offset;
+        stats.vertexBinds++;
+    }
+
+    public void draw(int vertexCount, int instanceCount) {
+        vkCmdDraw(commandBuffer, vertexCount, instanceCount, 0, 0);
+        stats.draws++;
+    }
+
+    public void drawIndexed(int indexCount, int instanceCount) {
+        vkCmdDrawIndexed(commandBuffer, indexCount, instanceCount, 0, 0, 0);
+        stats.draws++;
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    @Getter
+    public static class Stats {
+
+        private int draws;
+        private int pipelineBinds, pipelineBindsSkipped;
+        private int descriptorBinds, descriptorBindsSkipped;
+        private int pushConstants, pushConstantsSkipped;
+        private int vertexBinds, vertexBindsSkipped;
+        private int reordered;
+        private int culled;
+
+        void addReordered(int count) {
+            reordered += count;
+        }
+
+        void addCulled(int count) {
+            culled += count;
+        }
+
+        public int getSkipped() {
+            return pipelineBindsSkipped + descriptorBindsSkipped + pushConstantsSkipped + vertexBindsSkipped;
+        }
+
+        // Folds in the stats of a recorder that recorded part of the same frame, e.g. on a worker thread
+        void add(Stats other) {
+            draws += other.draws;
+            pipelineBinds += other.pipelineBinds;
+            pipelineBindsSkipped += other.pipelineBindsSkipped;
+            descriptorBinds += other.descriptorBinds;
+            descriptorBindsSkipped += other.descriptorBindsSkipped;
+            pushConstants += other.pushConstants;
+            pushConstantsSkipped += other.pushConstantsSkipped;
+            vertexBinds += other.vertexBinds;
+            vertexBindsSkipped += other.vertexBindsSkipped;
+            reordered += other.reordered;
+            culled += other.culled;
+        }
+
+        void reset() {
+            draws = 0;
+            pipelineBinds = pipelineBindsSkipped = 0;
+            descriptorBinds = descriptorBindsSkipped = 0;
+            pushConstants = pushConstantsSkipped = 0;
+            vertexBinds = vertexBindsSkipped = 0;
+            reordered = 0;
+            culled = 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "draws=%d, pipeline binds=%d (skipped %d), descriptor binds=%d (skipped %d), push constants=%d (skipped %d), buffer binds=%d (skipped %d), reordered=%d, culled=%d",
+                    draws, pipelineBinds, pipelineBindsSkipped, descriptorBinds, descriptorBindsSkipped,
+                    pushConstants, pushConstantsSkipped, vertexBinds, vertexBindsSkipped, reordered, culled
+            );
+        }
+    }
+}
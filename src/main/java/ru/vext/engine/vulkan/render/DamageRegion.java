@@ -0,0 +1,147 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.Getter;
+import org.joml.Vector4f;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DamageRegion {
+
+    @Getter
+    private final List<Vector4f> rects = new ArrayList<>();
+    @Getter
+    private final Vector4f bounds = new Vector4f();
+
+    private boolean full;
+
+    public synchronized void clear() {
+        rects.clear();
+        bounds.set(0);
+        full = false;
+    }
+
+    public synchronized void set(DamageRegion other) {
+        clear();
+        for (Vector4f rect : other.rects) {
+            rects.add(new Vector4f(rect));
+        }
+        bounds.set(other.bounds);
+    }
+
+    public synchronized void addFull() {
+        full = true;
+    }
+
+    public synchronized void add(Vector4f rect) {
+        add(rect.x, rect.y, rect.z, rect.w);
+    }
+
+    public synchronized void add(float minX, float minY, float maxX, float maxY) {
+        if (full || minX >= maxX || minY >= maxY) {
+            return;
+        }
+
+        Vector4f rect = new Vector4f(minX, minY, maxX, maxY);
+
+        // Overlapping rects are merged, which keeps the list short for the per-fragment test
+        for (int i = rects.size() - 1; i >= 0; i--) {
+            Vector4f other = rects.get(i);
+            if (intersects(rect, other)) {
+                union(rect, other);
+                rects.remove(i);
+                i = rects.size();
+            }
+        }
+        rects.add(rect);
+
+        while (rects.size() > UniformRing.MAX_DAMAGE_RECTS) {
+            mergeCheapestPair();
+        }
+    }
+
+    public synchronized void finish(int width, int height) {
+        if (full) {
+            rects.clear();
+            rects.add(new Vector4f(0, 0, width, height));
+            full = false;
+        }
+
+        // Pixel-aligned rects, so the clears, the scissor and the shader test agree on every pixel
+        List<Vector4f> clamped = new ArrayList<>(rects.size());
+        for (Vector4f rect : rects) {
+            rect.set(
+                    Math.max(0, (float) Math.floor(rect.x)), Math.max(0, (float) Math.floor(rect.y)),
+                    Math.min(width, (float) Math.ceil(rect.z)), Math.min(height, (float) Math.ceil(rect.w))
+            );
+            if (rect.x < rect.z && rect.y < rect.w) {
+                clamped.add(rect);
+            }
+        }
+        rects.clear();
+
+        for (Vector4f rect : clamped) {
+            add(rect);
+        }
+
+        bounds.set(0);
+        for (int i = 0; i < rects.size(); i++) {
+            if (i == 0) {
+                bounds.set(rects.get(i));
+            } else {
+                union(bounds, rects.get(i));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return rects.isEmpty();
+    }
+
+    public boolean intersects(float minX, float minY, float maxX, float maxY) {
+        for (Vector4f rect : rects) {
+            if (minX < rect.z && maxX > rect.x && minY < rect.w && maxY > rect.y) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void mergeCheapestPair() {
+        int bestA = 0, bestB = 1;
+        float bestGrowth = Float.MAX_VALUE;
+
+        for (int a = 0; a < rects.size(); a++) {
+            for (int b = a + 1; b < rects.size(); b++) {
+                Vector4f merged = union(new Vector4f(rects.get(a)), rects.get(b));
+                float growth = area(merged) - area(rects.get(a)) - area(rects.get(b));
+                if (growth < bestGrowth) {
+                    bestGrowth = growth;
+                    bestA = a;
+                    bestB = b;
+                }
+            }
+        }
+
+        Vector4f merged = union(new Vector4f(rects.get(bestA)), rects.get(bestB));
+        rects.remove(bestB);
+        rects.remove(bestA);
+        add(merged);
+    }
+
+    private static boolean intersects(Vector4f a, Vector4f b) {
+        return a.x < b.z && a.z > b.x && a.y < b.w && a.w > b.y;
+    }
+
+    private static Vector4f union(Vector4f target, Vector4f other) {
+        return target.set(
+                Math.min(target.x, other.x), Math.min(target.y, other.y),
+                Math.max(target.z, other.z), Math.max(target.w, other.w)
+        );
+    }
+
+    private static float area(Vector4f rect) {
+        return (rect.z - rect.x) * (rect.w - rect.y);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.vext.engine.vulkan.render;
+
+import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+
+import java.util.function.Consumer;
+
+public record DrawCommand(int layer, GraphicsPipeline pipeline, long descriptorSet,
+                          float minX, float minY, float maxX, float maxY,
+                          Consumer<CommandRecorder> action) {
+
+    public boolean overlaps(DrawCommand other) {
+        return minX < other.maxX && other.minX < maxX && minY < other.maxY && other.minY < maxY;
+    }
+
+    public int compareState(DrawCommand other) {
+        int result = Integer.compare(layer, other.layer);
+        if (result == 0) {
+            result = Long.compareUnsigned(pipeline.getId(), other.pipeline.getId());
+        }
+        if (result == 0) {
+            result = Long.compareUnsigned(descriptorSet, other.descriptorSet);
+        }
+        return result;
+    }
+}
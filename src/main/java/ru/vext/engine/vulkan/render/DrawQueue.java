@@ -0,0 +1,103 @@
+package ru.vext.engine.vulkan.render;
+
+import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+
+import java.util.*;
+
+public class DrawQueue {
+
+    // Layer first, then band, then pipeline state; List.sort is stable, so equal keys keep submission order
+    private static final Comparator<Entry> ORDER = (a, b) -> {
+        int result = Integer.compare(a.command().layer(), b.command().layer());
+        if (result == 0) {
+            result = Integer.compare(a.band(), b.band());
+        }
+        return result == 0 ? a.command().compareState(b.command()) : result;
+    };
+
+    private final List<DrawCommand> commands = new ArrayList<>();
+    private final List<Entry> sorted = new ArrayList<>();
+    private final Map<Integer, List<Bounds>> layerBands = new HashMap<>();
+
+    public void add(DrawCommand command) {
+        commands.add(command);
+    }
+
+    public void record(CommandRecorder recorder, DamageRegion damage) {
+        sort();
+
+        int reordered = 0, culled = 0;
+        GraphicsPipeline scopePipeline = null;
+        int scope = -1;
+        for (int i = 0; i < sorted.size(); i++) {
+            DrawCommand command = sorted.get(i).command();
+            if (command != commands.get(i)) {
+                reordered++;
+            }
+
+            // Pixels outside the damage are kept from the previous frame, so draws there are wasted
+            if (damage != null && !damage.intersects(command.minX(), command.minY(), command.maxX(), command.maxY())) {
+                culled++;
+                continue;
+            }
+
+            // Consecutive draws of one pipeline form a batch and are timed together
+            if (command.pipeline() != scopePipeline) {
+                recorder.endScope(scope);
+                scopePipeline = command.pipeline();
+                scope = recorder.beginScope(scopePipeline.getScopeName());
+            }
+            command.action().accept(recorder);
+        }
+        recorder.endScope(scope);
+
+        recorder.getStats().addReordered(reordered);
+        recorder.getStats().addCulled(culled);
+        commands.clear();
+        sorted.clear();
+    }
+
+    private void sort() {
+        layerBands.clear();
+
+        for (DrawCommand command : commands) {
+            List<Bounds> bands = layerBands.computeIfAbsent(command.layer(), layer -> new ArrayList<>());
+
+            // A command may only move ahead of draws it does not overlap, so it lands one band after the last band it touches
+            int band = bands.size() - 1;
+            while (band >= 0 && !bands.get(band).overlaps(command)) {
+                band--;
+            }
+            band++;
+
+            if (band == bands.size()) {
+                bands.add(new Bounds());
+            }
+            bands.get(band).add(command);
+            sorted.add(new Entry(command, band));
+        }
+
+        sorted.sort(ORDER);
+    }
+
+    private record Entry(DrawCommand command, int band) {
+    }
+
+    // Union of every command in a band; overlapping the union is a conservative stand-in for overlapping a member
+    private static class Bounds {
+
+        private float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        private float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+
+        void add(DrawCommand command) {
+            minX = Math.min(minX, command.minX());
+            minY = Math.min(minY, command.minY());
+            maxX = Math.max(maxX, command.maxX());
+            maxY = Math.max(maxY, command.maxY());
+        }
+
+        boolean overlaps(DrawCommand command) {
+            return minX < command.maxX() && command.minX() < maxX && minY < command.maxY() && command.minY() < maxY;
+        }
+    }
+}
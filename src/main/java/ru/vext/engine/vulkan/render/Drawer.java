@@ -1,34 +1,43 @@
 package ru.vext.engine.vulkan.render;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.joml.*;
-import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkCommandBuffer;
 import org.lwjgl.vulkan.VkDevice;
 import org.lwjgl.vulkan.VkExtent2D;
 import ru.vext.engine.resource.ResourceStorage;
-import ru.vext.engine.resource.font.FontLoader;
 import ru.vext.engine.util.Unit;
 import ru.vext.engine.vulkan.VkApplication;
-import ru.vext.engine.vulkan.buffer.BufferType;
-import ru.vext.engine.vulkan.buffer.MemoryBuffer;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.debug.GpuProfiler;
 import ru.vext.engine.resource.font.BakedFont;
 import ru.vext.engine.resource.font.Glyph;
 import ru.vext.engine.vulkan.swapchain.SwapChain;
-import ru.vext.engine.vulkan.swapchain.pipeline.graphics.FontGraphicsPipeline;
-import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+import ru.vext.engine.vulkan.render.bundle.BundleRegistry;
+import ru.vext.engine.vulkan.render.bundle.CommandBundle;
+import ru.vext.engine.vulkan.render.bundle.SecondaryCommandPool;
+import ru.vext.engine.vulkan.render.displaylist.DisplayList;
+import ru.vext.engine.vulkan.render.displaylist.DisplayListRenderer;
+import ru.vext.engine.vulkan.render.displaylist.FontTable;
+import ru.vext.engine.vulkan.render.displaylist.SegmentCache;
 
 import java.awt.*;
 import java.lang.Math;
-import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.lwjgl.vulkan.VK10.*;
 
 @Slf4j
 public class Drawer {
 
+    // Large enough to never clip; the vertex shaders recognise it as unbounded and skip the bundle transform
+    private static final float BUNDLE_CLIP_EXTENT = 1e7f;
+
     private final VkApplication vkApplication;
     private final VkDevice device;
     private final SwapChain swapChain;
@@ -36,30 +45,166 @@ public class Drawer {
     private final Matrix4f matrix;
     private final List<float[]> matrixStorage = new ArrayList<>();
 
-    private Frame frame;
+    private final Vector4f clip = new Vector4f();
+    private final List<Vector4f> clipStorage = new ArrayList<>();
+
+    @Getter
+    private final DisplayList displayList = new DisplayList();
+    @Getter
+    private final DisplayListRenderer renderer;
+
+    @Getter
+    private int layer;
+
+    private final BundleRegistry bundleRegistry;
+
+    private LinearAllocator allocator;
+    private UniformRing uniformRing;
+    private DamageRegion damage;
     private int frameIndex;
-    private VkCommandBuffer commandBuffer;
+    private int transformSlot;
+
+    private float[] glyphOffsets = new float[64];
+    private char[] glyphCharacters = new char[64];
 
-    public Drawer(VkApplication vkApplication, SwapChain swapChain) {
+    public Drawer(VkApplication vkApplication, SwapChain swapChain, FontTable fontTable, BundleRegistry bundleRegistry) {
         this.vkApplication = vkApplication;
         this.device = vkApplication.getDevice();
         this.swapChain = swapChain;
+        this.bundleRegistry = bundleRegistry;
 
         matrix = new Matrix4f();
+        renderer = new DisplayListRenderer(vkApplication, swapChain, fontTable, bundleRegistry);
     }
 
-    public void identity(Frame frame, int frameIndex, VkCommandBuffer commandBuffer) {
-        this.frame = frame;
+    public void identity(Frame frame, int frameIndex) {
+        this.allocator = frame.getLinearAllocator();
+        this.uniformRing = frame.getUniformRing();
+        this.damage = frame.getDamage();
         this.frameIndex = frameIndex;
-        this.commandBuffer = commandBuffer;
+        this.transformSlot = 0;
 
-        matrix.identity();
-        matrix.translate(-1, -1, 1);
+        VkExtent2D extent = swapChain.getExtent();
+        reset(0, 0, extent.width(), extent.height());
+
+        renderer.getRecorder().resetStats();
+    }
+
+    public void identity(DamageRegion damage) {
+        // Layout only: the display list is handed to another drawer for replay, so no frame resources are bound
+        this.allocator = null;
+        this.uniformRing = null;
+        this.damage = damage;
+        this.frameIndex = 0;
+        this.transformSlot = 0;
 
         VkExtent2D extent = swapChain.getExtent();
-        matrix.scale(2f / extent.width(), 2f / extent.height(), 1);
+        reset(0, 0, extent.width(), extent.height());
+    }
+
+    public void identityBundle(int frameIndex, LinearAllocator allocator, int transformSlot) {
+        this.allocator = allocator;
+        this.uniformRing = null;
+        this.damage = null;
+        this.frameIndex = frameIndex;
+        this.transformSlot = transformSlot;
+
+        // Bundle contents are recorded in local space, so the root clip must not depend on where the bundle is placed
+        reset(-BUNDLE_CLIP_EXTENT, -BUNDLE_CLIP_EXTENT, BUNDLE_CLIP_EXTENT, BUNDLE_CLIP_EXTENT);
+
+        renderer.getRecorder().resetStats();
+    }
 
+    private void reset(float minX, float minY, float maxX, float maxY) {
+        matrix.identity();
         matrixStorage.clear();
+
+        clip.set(minX, minY, maxX, maxY);
+        clipStorage.clear();
+
+        layer = 0;
+        displayList.clear();
+    }
+
+    public void flush(VkCommandBuffer commandBuffer) {
+        flush(commandBuffer, null);
+    }
+
+    public void flush(VkCommandBuffer commandBuffer, GpuProfiler profiler) {
+        renderer.getRecorder().begin(commandBuffer, frameIndex);
+        renderer.getRecorder().setProfiler(profiler);
+        renderer.render(displayList, allocator, frameIndex, transformSlot, damage);
+    }
+
+    public void flushSecondaries(long framebuffer, SecondaryCommandPool commandPool, List<VkCommandBuffer> commandBuffers) {
+        renderer.renderSecondaries(displayList, allocator, uniformRing, frameIndex, damage, framebuffer, commandPool, commandBuffers);
+    }
+
+    public CommandBundle createBundle() {
+        return bundleRegistry == null ? null : bundleRegistry.create();
+    }
+
+    public boolean drawBundle(CommandBundle bundle, Consumer<Drawer> content, float[] layout, boolean dirty) {
+        if (bundleRegistry == null || bundle == null || layer != 0 || !isFullClip()) {
+            return false;
+        }
+
+        if (dirty || !Arrays.equals(bundle.getLayout(), layout)) {
+            bundle.invalidate();
+            bundle.setLayout(layout);
+        }
+        bundle.setContent(content);
+
+        // What a bundle draws is only known once it is replayed, so any change to it repaints the window
+        if (dirty || !bundle.getEntryMatrix().equals(matrix)) {
+            addFullDamage();
+            bundle.getEntryMatrix().set(matrix);
+        }
+
+        displayList.bundle(bundle.getId(), matrix);
+        return true;
+    }
+
+    public boolean isTrackingDamage() {
+        return damage != null;
+    }
+
+    public void addDamage(Vector4f rect) {
+        if (damage != null) {
+            damage.add(rect);
+        }
+    }
+
+    public void addFullDamage() {
+        if (damage != null) {
+            damage.addFull();
+        }
+    }
+
+    public Vector4f getBounds(int start) {
+        return displayList.getBounds(start, displayList.size(), renderer.getFontTable(), new Vector4f());
+    }
+
+    private boolean isFullClip() {
+        VkExtent2D extent = swapChain.getExtent();
+        return clip.x <= 0 && clip.y <= 0 && clip.z >= extent.width() && clip.w >= extent.height();
+    }
+
+    public boolean drawCached(SegmentCache cache, float[] layout) {
+        if (!cache.matches(matrix, clip, layer, layout)) {
+            return false;
+        }
+
+        displayList.append(cache.getDisplayList());
+        return true;
+    }
+
+    public void beginSegment(SegmentCache cache, float[] layout) {
+        cache.begin(displayList.size(), matrix, clip, layer, layout);
+    }
+
+    public void endSegment(SegmentCache cache) {
+        cache.end(displayList);
     }
 
     public void translate(String x, String y) {
@@ -93,89 +238,76 @@ public class Drawer {
         this.matrix.set(matrix);
     }
 
-    public void drawQuad(String width, String height, Color color) {
-        VkExtent2D extent = swapChain.getExtent();
-        drawQuad(Unit.getScreenValue(width, extent.width()), Unit.getScreenValue(height, extent.height()), color);
+    public void setLayer(int layer) {
+        if (this.layer != layer) {
+            displayList.layer(layer);
+            this.layer = layer;
+        }
     }
 
-    public void drawQuad(float width, float height, Color color) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            Vector3f point1 = matrix.transformPosition(new Vector3f(0, 0, 0));
-            Vector3f point2 = matrix.transformPosition(new Vector3f(width, 0, 0));
-            Vector3f point3 = matrix.transformPosition(new Vector3f(0, height, 0));
-            Vector3f point4 = matrix.transformPosition(new Vector3f(width, height, 0));
-
-            Float[] positions = new Float[]{
-                    point1.x, point1.y,
-                    point2.x, point2.y,
-                    point3.x, point3.y,
-                    point4.x, point4.y,
-            };
-
-            MemoryBuffer positionBuffer = frame.getBufferPool().createTemp(positions, BufferType.USAGE_VERTEX, BufferType.MEMORY_TYPE_CPU_VISIBLE);
+    public void pushClip(float width, float height) {
+        clipStorage.add(0, new Vector4f(clip));
 
-            GraphicsPipeline pipeline = swapChain.getGraphicsPipeline("default");
-            pipeline.bind(commandBuffer, frameIndex);
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+        matrix.transformAab(0, 0, 0, width, height, 0, min, max);
 
-            FloatBuffer pushConstantData = stack.mallocFloat(16);
-            pushConstantData.put(color.getRGBComponents(null));
-            pushConstantData.flip();
-
-            vkCmdPushConstants(commandBuffer, pipeline.getPipelineLayout(), VK_SHADER_STAGE_VERTEX_BIT, 0, pushConstantData);
+        clip.set(
+                Math.max(clip.x, min.x), Math.max(clip.y, min.y),
+                Math.min(clip.z, max.x), Math.min(clip.w, max.y)
+        );
+    }
 
-            vkCmdBindVertexBuffers(commandBuffer, 0, new long[]{positionBuffer.getId()}, new long[]{0});
-            vkCmdDraw(commandBuffer, 4, 1, 0, 0);
+    public void popClip() {
+        if (clipStorage.isEmpty()) {
+            throw new IllegalStateException("No clip stored yet");
         }
 
+        clip.set(clipStorage.remove(0));
     }
 
-    public void drawText(CharSequence text, String font, float fontSize, Color color) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-
-            translate(0, fontSize);
-
-            float scale = fontSize / 24;
-            scale(scale, scale);
-
-            ResourceStorage resourceStorage = vkApplication.getResourceStorage();
-            BakedFont bakedFont = resourceStorage.getFont(font);
+    public void drawQuad(String width, String height, Color color) {
+        VkExtent2D extent = swapChain.getExtent();
+        drawQuad(Unit.getScreenValue(width, extent.width()), Unit.getScreenValue(height, extent.height()), color);
+    }
 
-            FontGraphicsPipeline pipeline = (FontGraphicsPipeline) swapChain.getGraphicsPipeline("font-" + bakedFont.getKey());
-            pipeline.bind(commandBuffer, frameIndex);
+    public void drawQuad(float width, float height, Color color) {
+        addPanel(width, height, 0, color, false);
+    }
 
-            FloatBuffer pushConstantData = stack.mallocFloat(21);
-            pushConstantData.put(matrix.get(new float[16]));
-            pushConstantData.put(color.getRGBColorComponents(null));
-            pushConstantData.put(FontLoader.FONT_SIZE);
-            pushConstantData.put(FontLoader.MAP_SIZE);
-            pushConstantData.flip();
+    public void drawNineSlice(float width, float height, float border, Color color) {
+        addPanel(width, height, border, color, true);
+    }
 
-            vkCmdPushConstants(commandBuffer, pipeline.getPipelineLayout(), VK_SHADER_STAGE_VERTEX_BIT, 0, pushConstantData);
+    private void addPanel(float width, float height, float border, Color color, boolean nineSlice) {
+        displayList.panel(matrix, width, height, border, color.getRGBComponents(null), clip, nineSlice);
+    }
 
-            Glyph[] glyphs = bakedFont.getGlyphs(text);
+    public void drawText(CharSequence text, String font, float fontSize, Color color) {
+        translate(0, fontSize);
 
-            Integer[] glyphData = new Integer[glyphs.length];
-            Float[] offsetData = new Float[glyphs.length];
+        float scale = fontSize / 24;
+        scale(scale, scale);
 
-            float offsetX = 0;
-            for (int i = 0; i < glyphs.length; i++) {
-                Glyph glyph = glyphs[i];
+        ResourceStorage resourceStorage = vkApplication.getResourceStorage();
+        BakedFont bakedFont = resourceStorage.getFont(font);
 
-                offsetX += glyph.getOffsetX();
-                glyphData[i] = (int) glyph.getCharacter();
-                offsetData[i] = (float) Math.floor(offsetX);
-                offsetX += glyph.getAdvanceWidth();
-            }
+        Glyph[] glyphs = bakedFont.getGlyphs(text);
+        if (glyphs.length > glyphOffsets.length) {
+            glyphOffsets = new float[glyphs.length];
+            glyphCharacters = new char[glyphs.length];
+        }
 
-            MemoryBuffer glyphBuffer = frame.getBufferPool().createTemp(glyphData, BufferType.USAGE_VERTEX_TRANSFER_SRC, BufferType.MEMORY_TYPE_CPU_VISIBLE);
-            MemoryBuffer offsetBuffer = frame.getBufferPool().createTemp(offsetData, BufferType.USAGE_VERTEX_TRANSFER_SRC, BufferType.MEMORY_TYPE_CPU_VISIBLE);
+        float offsetX = 0;
+        for (int i = 0; i < glyphs.length; i++) {
+            Glyph glyph = glyphs[i];
 
-            vkCmdBindVertexBuffers(
-                    commandBuffer, 0,
-                    new long[]{glyphBuffer.getId(), offsetBuffer.getId()},
-                    new long[]{0, 0}
-            );
-            vkCmdDraw(commandBuffer, 4, glyphs.length, 0, 0);
+            offsetX += glyph.getOffsetX();
+            glyphOffsets[i] = (float) Math.floor(offsetX);
+            glyphCharacters[i] = glyph.getCharacter();
+            offsetX += glyph.getAdvanceWidth();
         }
+
+        displayList.text(renderer.getFontTable().getId(bakedFont), matrix, color.getRGBComponents(null), clip, glyphOffsets, glyphCharacters, glyphs.length);
     }
 }
@@ -2,7 +2,8 @@ package ru.vext.engine.vulkan.render;
 
 import lombok.Getter;
 import ru.vext.engine.vulkan.VkApplication;
-import ru.vext.engine.vulkan.buffer.BufferPool;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.buffer.UniformRing;
 
 import java.nio.LongBuffer;
 
@@ -15,14 +16,18 @@ public final class Frame {
     private final long renderFinishedSemaphore;
     private final long fence;
 
-    private final BufferPool bufferPool;
+    private final LinearAllocator linearAllocator;
+    private final UniformRing uniformRing;
+    private final DamageRegion damage = new DamageRegion();
 
-    public Frame(VkApplication vkApplication, long imageAvailableSemaphore, long renderFinishedSemaphore, long fence) {
+    public Frame(VkApplication vkApplication, UniformRing uniformRing, long imageAvailableSemaphore, long renderFinishedSemaphore, long fence) {
         this.imageAvailableSemaphore = imageAvailableSemaphore;
         this.renderFinishedSemaphore = renderFinishedSemaphore;
         this.fence = fence;
 
-        bufferPool = new BufferPool(vkApplication);
+        this.uniformRing = uniformRing;
+
+        linearAllocator = new LinearAllocator(vkApplication);
     }
 
     public LongBuffer pImageAvailableSemaphore() {
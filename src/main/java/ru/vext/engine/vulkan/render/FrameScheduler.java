@@ -0,0 +1,89 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.lwjgl.glfw.GLFW.*;
+
+@Slf4j
+public class FrameScheduler {
+
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    // Upper bound on an idle wait, so the loop still comes around when a wake-up is missed
+    private static final double IDLE_TIMEOUT = 0.5;
+
+    private final AtomicBoolean frameRequested = new AtomicBoolean(true);
+    private final Set<Runnable> animations = ConcurrentHashMap.newKeySet();
+
+    private long frameIntervalNanos = 1_000_000_000L / DEFAULT_REFRESH_RATE;
+    // Earliest time the next frame may start, whether a mutation or an animation asked for it
+    private long nextFrame;
+
+    public void setRefreshRate(int refreshRate) {
+        int rate = refreshRate > 0 ? refreshRate : DEFAULT_REFRESH_RATE;
+        frameIntervalNanos = 1_000_000_000L / rate;
+        log.debug("Frames paced at {} Hz", rate);
+    }
+
+    // Safe from any thread: wakes the main loop if it is blocked waiting for events
+    public void requestFrame() {
+        if (!frameRequested.getAndSet(true)) {
+            glfwPostEmptyEvent();
+        }
+    }
+
+    // Runs once per display refresh on the main loop thread until stopped
+    public void startAnimation(Runnable animation) {
+        if (animations.add(animation)) {
+            requestFrame();
+        }
+    }
+
+    public void stopAnimation(Runnable animation) {
+        animations.remove(animation);
+    }
+
+    public boolean isAnimating() {
+        return !animations.isEmpty();
+    }
+
+    public void waitEvents() {
+        if (!frameRequested.get() && !isAnimating()) {
+            glfwWaitEventsTimeout(IDLE_TIMEOUT);
+            return;
+        }
+
+        // Input still wakes the wait early, but frames are held to the display rate however often the scene changes
+        long remaining = nextFrame - System.nanoTime();
+        if (remaining > 0) {
+            glfwWaitEventsTimeout(remaining / 1e9);
+        } else {
+            glfwPollEvents();
+        }
+    }
+
+    public boolean takeFrameRequest() {
+        long now = System.nanoTime();
+        if (now < nextFrame) {
+            return false;
+        }
+
+        boolean animating = isAnimating();
+        if (animating) {
+            // Ticks that change the scene request the frame through its dirty flag
+            for (Runnable animation : animations) {
+                animation.run();
+            }
+        }
+
+        boolean requested = frameRequested.getAndSet(false);
+        if (requested || animating) {
+            nextFrame = now + frameIntervalNanos;
+        }
+        return requested;
+    }
+}
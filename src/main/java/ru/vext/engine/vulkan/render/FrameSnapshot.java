@@ -0,0 +1,38 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.Getter;
+import org.joml.Vector4f;
+import ru.vext.engine.vulkan.render.displaylist.DisplayList;
+
+// Everything the render thread needs from one layout pass; never touched by the UI thread once published,
+// its display list goes back to the RenderThread pool after rendering
+@Getter
+public class FrameSnapshot {
+
+    private final DisplayList displayList;
+    private final DamageRegion damage;
+    private final float[] clearColor;
+    private final int generation;
+    private final int width, height;
+
+    public FrameSnapshot(DisplayList displayList, DamageRegion damage, float[] clearColor, int generation, int width, int height) {
+        this.displayList = displayList;
+        this.damage = damage;
+        this.clearColor = clearColor;
+        this.generation = generation;
+        this.width = width;
+        this.height = height;
+    }
+
+    // The display list always covers the whole scene, so a skipped snapshot only leaves its damage behind
+    public void mergeDamage(FrameSnapshot skipped) {
+        if (skipped.generation != generation) {
+            return;
+        }
+
+        for (Vector4f rect : skipped.damage.getRects()) {
+            damage.add(rect);
+        }
+        damage.finish(width, height);
+    }
+}
@@ -0,0 +1,110 @@
+package ru.vext.engine.vulkan.render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import ru.vext.engine.resource.font.FontLoader;
+import ru.vext.engine.resource.font.Glyph;
+import ru.vext.engine.vulkan.buffer.BufferSlice;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+
+import java.util.Arrays;
+
+import static org.lwjgl.vulkan.VK10.VK_SHADER_STAGE_VERTEX_BIT;
+
+public class GlyphBatch {
+
+    // mat4 transform, vec4 color, (offsetX, glyphIndex and fontIndex as int bits, 0), vec4 clip (minX, minY, maxX, maxY)
+    public static final int INSTANCE_FLOATS = 16 + 4 + 4 + 4;
+    public static final int INSTANCE_STRIDE = INSTANCE_FLOATS * Float.BYTES;
+
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+
+    private float[] instances = new float[INSTANCE_FLOATS * 1024];
+    private int instanceCount;
+    private int fontId;
+
+    private float minX, minY, maxX, maxY;
+
+    // Every font shares the text pipeline and descriptor set, but the atlas index has to stay uniform within a draw
+    // without non-uniform descriptor indexing, so a font switch only starts a new draw
+    public boolean canAppend(int fontId) {
+        return instanceCount == 0 || this.fontId == fontId;
+    }
+
+    public void add(int fontId, Matrix4f matrix, float offsetX, Glyph glyph, float[] rgba, Vector4f clip) {
+        this.fontId = fontId;
+
+        if ((instanceCount + 1) * INSTANCE_FLOATS > instances.length) {
+            instances = Arrays.copyOf(instances, instances.length * 2);
+        }
+
+        int offset = instanceCount * INSTANCE_FLOATS;
+        matrix.get(instances, offset);
+        offset += 16;
+
+        System.arraycopy(rgba, 0, instances, offset, 4);
+        offset += 4;
+
+        instances[offset++] = offsetX;
+        instances[offset++] = Float.intBitsToFloat(glyph.getCharacter());
+        instances[offset++] = Float.intBitsToFloat(fontId);
+        instances[offset++] = 0;
+
+        instances[offset++] = clip.x;
+        instances[offset++] = clip.y;
+        instances[offset++] = clip.z;
+        instances[offset] = clip.w;
+
+        // Same placement as font.vert: the quad spans [-height, 0] in y before being lifted by offsetY
+        matrix.transformAab(
+                offsetX, -glyph.getOffsetY() - glyph.getHeight(), 0,
+                offsetX + glyph.getWidth(), -glyph.getOffsetY(), 0,
+                min, max
+        );
+        includeBounds(Math.max(min.x, clip.x), Math.max(min.y, clip.y), Math.min(max.x, clip.z), Math.min(max.y, clip.w));
+
+        instanceCount++;
+    }
+
+    private void includeBounds(float minX, float minY, float maxX, float maxY) {
+        if (instanceCount == 0) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            return;
+        }
+
+        this.minX = Math.min(this.minX, minX);
+        this.minY = Math.min(this.minY, minY);
+        this.maxX = Math.max(this.maxX, maxX);
+        this.maxY = Math.max(this.maxY, maxY);
+    }
+
+    public boolean isEmpty() {
+        return instanceCount == 0;
+    }
+
+    public void flush(DrawQueue drawQueue, LinearAllocator allocator, int frameIndex, int layer, int transformSlot, GraphicsPipeline pipeline) {
+        if (instanceCount == 0) {
+            return;
+        }
+
+        BufferSlice instanceSlice = allocator.allocate(instances, instanceCount * INSTANCE_FLOATS);
+        int count = instanceCount;
+
+        long descriptorSet = pipeline.getDescriptorPool() == null ? 0 : pipeline.getDescriptorPool().getDescriptorSets()[frameIndex];
+
+        drawQueue.add(new DrawCommand(layer, pipeline, descriptorSet, minX, minY, maxX, maxY, recorder -> {
+            recorder.bindPipeline(pipeline);
+            recorder.pushConstants(VK_SHADER_STAGE_VERTEX_BIT, FontLoader.FONT_SIZE, FontLoader.MAP_SIZE, Float.intBitsToFloat(transformSlot));
+            recorder.bindVertexBuffer(0, instanceSlice.buffer(), instanceSlice.offset());
+            recorder.draw(4, count);
+        }));
+
+        instanceCount = 0;
+    }
+}
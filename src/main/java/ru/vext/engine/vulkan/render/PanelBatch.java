@@ -0,0 +1,112 @@
+package ru.vext.engine.vulkan.render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import ru.vext.engine.vulkan.buffer.BufferSlice;
+import ru.vext.engine.vulkan.buffer.DefaultBuffers;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
+
+import java.util.Arrays;
+
+import static org.lwjgl.vulkan.VK10.VK_SHADER_STAGE_VERTEX_BIT;
+
+public class PanelBatch {
+
+    // mat4 transform, vec4 color, vec4 (width, height, border, 0), vec4 clip (minX, minY, maxX, maxY)
+    public static final int INSTANCE_FLOATS = 16 + 4 + 4 + 4;
+    public static final int INSTANCE_STRIDE = INSTANCE_FLOATS * Float.BYTES;
+
+    private final Vector3f min = new Vector3f();
+    private final Vector3f max = new Vector3f();
+
+    private float[] instances = new float[INSTANCE_FLOATS * 256];
+    private int instanceCount;
+    private boolean nineSlice;
+
+    private float minX, minY, maxX, maxY;
+
+    public boolean canAppend(boolean nineSlice) {
+        // A run only merges panels that share geometry, so painter's order is kept across quad/nine-slice switches
+        return instanceCount == 0 || this.nineSlice == nineSlice;
+    }
+
+    public void add(Matrix4f matrix, float width, float height, float border, float[] rgba, Vector4f clip, boolean nineSlice) {
+        this.nineSlice = nineSlice;
+
+        if ((instanceCount + 1) * INSTANCE_FLOATS > instances.length) {
+            instances = Arrays.copyOf(instances, instances.length * 2);
+        }
+
+        int offset = instanceCount * INSTANCE_FLOATS;
+        matrix.get(instances, offset);
+        offset += 16;
+
+        System.arraycopy(rgba, 0, instances, offset, 4);
+        offset += 4;
+
+        instances[offset++] = width;
+        instances[offset++] = height;
+        instances[offset++] = border;
+        instances[offset++] = 0;
+
+        instances[offset++] = clip.x;
+        instances[offset++] = clip.y;
+        instances[offset++] = clip.z;
+        instances[offset] = clip.w;
+
+        matrix.transformAab(0, 0, 0, width, height, 0, min, max);
+        includeBounds(Math.max(min.x, clip.x), Math.max(min.y, clip.y), Math.min(max.x, clip.z), Math.min(max.y, clip.w));
+
+        instanceCount++;
+    }
+
+    private void includeBounds(float minX, float minY, float maxX, float maxY) {
+        if (instanceCount == 0) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            return;
+        }
+
+        this.minX = Math.min(this.minX, minX);
+        this.minY = Math.min(this.minY, minY);
+        this.maxX = Math.max(this.maxX, maxX);
+        this.maxY = Math.max(this.maxY, maxY);
+    }
+
+    public boolean isEmpty() {
+        return instanceCount == 0;
+    }
+
+    public void flush(DrawQueue drawQueue, LinearAllocator allocator, int frameIndex, int layer, int transformSlot, GraphicsPipeline pipeline, DefaultBuffers defaultBuffers) {
+        if (instanceCount == 0) {
+            return;
+        }
+
+        BufferSlice instanceSlice = allocator.allocate(instances, instanceCount * INSTANCE_FLOATS);
+        int count = instanceCount;
+        boolean nineSlice = this.nineSlice;
+
+        long descriptorSet = pipeline.getDescriptorPool() == null ? 0 : pipeline.getDescriptorPool().getDescriptorSets()[frameIndex];
+
+        drawQueue.add(new DrawCommand(layer, pipeline, descriptorSet, minX, minY, maxX, maxY, recorder -> {
+            recorder.bindPipeline(pipeline);
+            recorder.pushConstants(VK_SHADER_STAGE_VERTEX_BIT, Float.intBitsToFloat(transformSlot));
+            recorder.bindVertexBuffer(1, instanceSlice.buffer(), instanceSlice.offset());
+
+            if (nineSlice) {
+                recorder.bindVertexBuffer(0, defaultBuffers.getNineSliceVertexBuffer().getId(), 0);
+                recorder.bindIndexBuffer(defaultBuffers.getNineSliceIndexBuffer().getId(), 0);
+                recorder.drawIndexed(DefaultBuffers.NINE_SLICE_INDEX_COUNT, count);
+            } else {
+                recorder.bindVertexBuffer(0, defaultBuffers.getQuadVertexBuffer().getId(), 0);
+                recorder.draw(DefaultBuffers.QUAD_VERTEX_COUNT, count);
+            }
+        }));
+
+        instanceCount = 0;
+    }
+}
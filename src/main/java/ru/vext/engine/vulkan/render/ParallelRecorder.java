@@ -0,0 +1,155 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import ru.vext.engine.component.base.IComponent;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.render.bundle.BundleRegistry;
+import ru.vext.engine.vulkan.render.bundle.SecondaryCommandPool;
+import ru.vext.engine.vulkan.render.displaylist.FontTable;
+import ru.vext.engine.vulkan.swapchain.SwapChain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+public class ParallelRecorder {
+
+    public static final String THREADS_PROPERTY = "vext.recordThreads";
+
+    @Getter
+    private final List<Worker> workers = new ArrayList<>();
+    private final ExecutorService executor;
+
+    private int activeWorkers;
+
+    private final CommandRecorder.Stats stats = new CommandRecorder.Stats();
+
+    public ParallelRecorder(VkApplication vkApplication, SwapChain swapChain, FontTable fontTable, BundleRegistry bundleRegistry, int workerCount, int maxFramesInFlight) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "vext-record-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new Worker(
+                    new SecondaryCommandPool(vkApplication, maxFramesInFlight),
+                    new Drawer(vkApplication, swapChain, fontTable, bundleRegistry)
+            ));
+        }
+
+        log.info("Recording scene on {} worker threads", workerCount);
+    }
+
+    public void draw(Frame frame, int frameIndex, List<IComponent> components) {
+        activeWorkers = Math.min(workers.size(), Math.max(components.size(), 1));
+        List<Callable<Void>> tasks = new ArrayList<>(activeWorkers);
+
+        // Contiguous slices keep painter's order: secondaries are executed in the same order as the scene children
+        for (int i = 0; i < activeWorkers; i++) {
+            Worker worker = workers.get(i);
+            List<IComponent> slice = components.subList(
+                    components.size() * i / activeWorkers,
+                    components.size() * (i + 1) / activeWorkers
+            );
+            tasks.add(() -> {
+                worker.draw(frame, frameIndex, slice);
+                return null;
+            });
+        }
+
+        invokeAll(tasks);
+    }
+
+    public void record(int frameIndex, long framebuffer, List<VkCommandBuffer> secondaries) {
+        // Recording starts only once every worker has drawn, because the frame damage must be complete by then
+        List<Callable<List<VkCommandBuffer>>> tasks = new ArrayList<>(activeWorkers);
+        for (int i = 0; i < activeWorkers; i++) {
+            Worker worker = workers.get(i);
+            tasks.add(() -> worker.record(frameIndex, framebuffer));
+        }
+
+        for (List<VkCommandBuffer> commandBuffers : invokeAll(tasks)) {
+            secondaries.addAll(commandBuffers);
+        }
+    }
+
+    // Bundles are replayed by the workers, so only their display lists tell whether this frame uses any
+    public boolean containsBundles() {
+        for (int i = 0; i < activeWorkers; i++) {
+            if (workers.get(i).drawer.getDisplayList().containsBundles()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public CommandRecorder.Stats getStats() {
+        stats.reset();
+        for (int i = 0; i < activeWorkers; i++) {
+            stats.add(workers.get(i).drawer.getRenderer().getRecorder().getStats());
+        }
+        return stats;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> result : executor.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while recording secondary command buffers", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to record secondary command buffer", e.getCause());
+        }
+    }
+
+    public void cleanup() {
+        executor.shutdown();
+
+        for (Worker worker : workers) {
+            worker.commandPool.cleanup();
+        }
+        workers.clear();
+    }
+
+    public static class Worker {
+
+        private final SecondaryCommandPool commandPool;
+        private final List<VkCommandBuffer> commandBuffers = new ArrayList<>();
+        @Getter
+        private final Drawer drawer;
+
+        private Worker(SecondaryCommandPool commandPool, Drawer drawer) {
+            this.commandPool = commandPool;
+            this.drawer = drawer;
+        }
+
+        private void draw(Frame frame, int frameIndex, List<IComponent> components) {
+            drawer.identity(frame, frameIndex);
+            for (IComponent component : components) {
+                component.drawPipeline(drawer);
+            }
+        }
+
+        private List<VkCommandBuffer> record(int frameIndex, long framebuffer) {
+            commandPool.reset(frameIndex);
+            commandBuffers.clear();
+
+            drawer.flushSecondaries(framebuffer, commandPool, commandBuffers);
+            return commandBuffers;
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package ru.vext.engine.vulkan.render;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import ru.vext.engine.component.Scene;
+import ru.vext.engine.component.base.IComponent;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.render.bundle.BundleRegistry;
+import ru.vext.engine.vulkan.render.bundle.SecondaryCommandPool;
+import ru.vext.engine.vulkan.render.displaylist.DisplayList;
+import ru.vext.engine.vulkan.render.displaylist.FontTable;
+import ru.vext.engine.vulkan.debug.GpuProfiler;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
 import ru.vext.engine.vulkan.swapchain.SwapChain;
 
 import java.awt.*;
@@ -12,11 +25,14 @@ import java.awt.color.ColorSpace;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.KHRIncrementalPresent.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_SUBOPTIMAL_KHR;
 import static org.lwjgl.vulkan.VK10.*;
@@ -34,6 +50,26 @@ public class RenderPipeline {
     private int currentFrame;
 
     private Drawer drawer;
+    private ParallelRecorder parallelRecorder;
+    private BundleRegistry bundleRegistry;
+    private SecondaryCommandPool secondaryCommandPool;
+    private final List<VkCommandBuffer> secondaries = new ArrayList<>();
+    // Reused every frame to hand the scene children to the workers as an indexable list
+    private final List<IComponent> sceneChildren = new ArrayList<>();
+
+    private RenderThread renderThread;
+    private Drawer snapshotDrawer;
+    private final ReentrantLock renderLock = new ReentrantLock();
+
+    @Getter
+    private GpuProfiler gpuProfiler;
+
+    private final Matrix4f projection = new Matrix4f();
+    private final Matrix4f identity = new Matrix4f();
+    private final float[] frameGlobals = new float[(int) (UniformRing.FRAME_GLOBALS_SIZE / Float.BYTES)];
+    private final float[] clearColor = new float[4];
+    private int drawnGeneration = -1;
+    private final long startTime = System.nanoTime();
 
     public RenderPipeline(VkApplication vkApplication, SwapChain swapChain, int maxFramesInFlight) {
         this.vkApplication = vkApplication;
@@ -44,15 +80,45 @@ public class RenderPipeline {
 
     public void create() {
         createSyncObjects();
-        drawer = new Drawer(vkApplication, swapChain);
+        gpuProfiler = new GpuProfiler(vkApplication, maxFramesInFlight);
+
+        FontTable fontTable = vkApplication.getFontTable();
+        bundleRegistry = new BundleRegistry(vkApplication, maxFramesInFlight);
+        secondaryCommandPool = new SecondaryCommandPool(vkApplication, maxFramesInFlight);
+        drawer = new Drawer(vkApplication, swapChain, fontTable, bundleRegistry);
+
+        int recordThreads = Integer.getInteger(ParallelRecorder.THREADS_PROPERTY, 0);
+        if (Boolean.getBoolean(RenderThread.ENABLE_PROPERTY)) {
+            // Layout runs on the main thread against a drawer without bundles, since bundle contents are drawn at replay time
+            snapshotDrawer = new Drawer(vkApplication, swapChain, fontTable, null);
+            renderThread = new RenderThread(this::renderSnapshot);
+
+            if (recordThreads > 1) {
+                log.warn("{} is ignored while rendering on a dedicated render thread", ParallelRecorder.THREADS_PROPERTY);
+            }
+        } else if (recordThreads > 1) {
+            parallelRecorder = new ParallelRecorder(vkApplication, swapChain, fontTable, bundleRegistry, recordThreads, maxFramesInFlight);
+        }
     }
 
     public void cleanup() {
+        HandleTracker handleTracker = vkApplication.getHandleTracker();
+
+        if (parallelRecorder != null) {
+            parallelRecorder.cleanup();
+        }
+        bundleRegistry.cleanup();
+        secondaryCommandPool.cleanup();
+        gpuProfiler.cleanup();
+
         for (Frame frame : inFlightFrames) {
             vkDestroySemaphore(device, frame.getRenderFinishedSemaphore(), null);
             vkDestroySemaphore(device, frame.getImageAvailableSemaphore(), null);
             vkDestroyFence(device, frame.getFence(), null);
-            frame.getBufferPool().cleanup();
+            handleTracker.unregister(HandleType.SEMAPHORE, frame.getRenderFinishedSemaphore());
+            handleTracker.unregister(HandleType.SEMAPHORE, frame.getImageAvailableSemaphore());
+            handleTracker.unregister(HandleType.FENCE, frame.getFence());
+            frame.getLinearAllocator().cleanup();
         }
         imagesInFlight.clear();
     }
@@ -82,7 +148,11 @@ public class RenderPipeline {
                     throw new RuntimeException("Failed to create synchronization objects for the frame " + i);
                 }
 
-                inFlightFrames.add(new Frame(vkApplication, pImageAvailableSemaphore.get(0), pRenderFinishedSemaphore.get(0), pFence.get(0)));
+                vkApplication.getHandleTracker().register(HandleType.SEMAPHORE, pImageAvailableSemaphore.get(0));
+                vkApplication.getHandleTracker().register(HandleType.SEMAPHORE, pRenderFinishedSemaphore.get(0));
+                vkApplication.getHandleTracker().register(HandleType.FENCE, pFence.get(0));
+
+                inFlightFrames.add(new Frame(vkApplication, vkApplication.getUniformRings().get(i), pImageAvailableSemaphore.get(0), pRenderFinishedSemaphore.get(0), pFence.get(0)));
             }
         }
     }
@@ -92,130 +162,410 @@ public class RenderPipeline {
 
         if (scene == null || !scene.isDirty()) return;
 
+        if (renderThread != null) {
+            publishSnapshot(scene);
+            return;
+        }
+
         try (MemoryStack stack = stackPush()) {
             Frame thisFrame = inFlightFrames.get(currentFrame);
 
             vkWaitForFences(device, thisFrame.pFence(), true, 0xFFFFFFFFFFFFFFFFL);
 
-            IntBuffer pImageIndex = stack.mallocInt(1);
+            thisFrame.getLinearAllocator().reset();
+
+            vkApplication.getUploadScheduler().poll();
 
-            long result = vkAcquireNextImageKHR(device, swapChain.getId(), 0xFFFFFFFFFFFFFFFFL, thisFrame.getImageAvailableSemaphore(), VK_NULL_HANDLE, pImageIndex);
+            drawScene(scene, thisFrame);
 
-            if (result == VK_ERROR_OUT_OF_DATE_KHR) {
-                vkApplication.recreateSwapChain();
+            if (thisFrame.getDamage().isEmpty()) {
+                // Nothing visible changed, so the image on screen is still current
+                scene.setDirty(false);
                 return;
-            } else if (result != VK_SUCCESS && result != VK_SUBOPTIMAL_KHR) {
-                throw new RuntimeException("Failed to acquire swap chain image!");
             }
 
-            final int imageIndex = pImageIndex.get(0);
+            submitFrame(thisFrame, getClearColor(scene, clearColor), stack);
+
+            scene.setDirty(false);
+        }
+    }
+
+    private void publishSnapshot(Scene scene) {
+        DamageRegion damage = new DamageRegion();
+        collectFullDamage(scene, damage);
+
+        snapshotDrawer.identity(damage);
+        scene.drawPipeline(snapshotDrawer);
+
+        VkExtent2D extent = swapChain.getExtent();
+        damage.finish(extent.width(), extent.height());
+
+        scene.setDirty(false);
 
-            thisFrame.getBufferPool().cleanup();
+        if (damage.isEmpty()) {
+            return;
+        }
 
-            if (imagesInFlight.containsKey(imageIndex))
-                vkWaitForFences(device, imagesInFlight.get(imageIndex).getFence(), true, 0xFFFFFFFFFFFFFFFFL);
+        DisplayList displayList = renderThread.obtainDisplayList();
+        displayList.append(snapshotDrawer.getDisplayList());
 
-            imagesInFlight.put(imageIndex, thisFrame);
+        // The snapshot crosses to the render thread, so it owns its clear color like its damage
+        renderThread.publish(new FrameSnapshot(displayList, damage, getClearColor(scene, new float[4]), swapChain.getGeneration(), extent.width(), extent.height()));
+    }
 
-            VkCommandBuffer commandBuffer = swapChain.getCommandBuffers().get(imageIndex);
-            vkResetCommandBuffer(commandBuffer, 0);
+    private void renderSnapshot(FrameSnapshot snapshot) {
+        renderLock.lock();
+        try (MemoryStack stack = stackPush()) {
+            // Laid out against a swap chain that has been recreated since; the recreation already requested a new one
+            if (snapshot.getGeneration() != swapChain.getGeneration()) {
+                return;
+            }
 
-            drawer.identity(thisFrame, currentFrame, commandBuffer);
+            Frame thisFrame = inFlightFrames.get(currentFrame);
 
-            recordCommandBuffer(commandBuffer, thisFrame, imageIndex);
+            vkWaitForFences(device, thisFrame.pFence(), true, 0xFFFFFFFFFFFFFFFFL);
 
-            VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
-            submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+            thisFrame.getLinearAllocator().reset();
 
-            submitInfo.waitSemaphoreCount(1);
-            submitInfo.pWaitSemaphores(thisFrame.pImageAvailableSemaphore());
-            submitInfo.pWaitDstStageMask(stack.ints(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT));
+            vkApplication.getUploadScheduler().poll();
 
-            submitInfo.pSignalSemaphores(thisFrame.pRenderFinishedSemaphore());
+            drawer.identity(thisFrame, currentFrame);
+            drawer.getDisplayList().append(snapshot.getDisplayList());
+            thisFrame.getDamage().set(snapshot.getDamage());
 
-            submitInfo.pCommandBuffers(stack.pointers(swapChain.getCommandBuffers().get(imageIndex)));
+            submitFrame(thisFrame, snapshot.getClearColor(), stack);
+        } finally {
+            renderLock.unlock();
+        }
+    }
 
-            vkResetFences(device, thisFrame.pFence());
+    // Swap chain recreation must not interleave with a frame being recorded or presented on the render thread
+    public void runExclusive(Runnable action) {
+        renderLock.lock();
+        try {
+            action.run();
+        } finally {
+            renderLock.unlock();
+        }
+    }
 
+    public void stopRendering() {
+        if (renderThread != null) {
+            renderThread.stop();
+        }
+    }
+
+    private void submitFrame(Frame thisFrame, float[] clearColor, MemoryStack stack) {
+        writeFrameGlobals(thisFrame.getUniformRing(), thisFrame.getDamage());
+
+        IntBuffer pImageIndex = stack.mallocInt(1);
+
+        long result = vkAcquireNextImageKHR(device, swapChain.getId(), 0xFFFFFFFFFFFFFFFFL, thisFrame.getImageAvailableSemaphore(), VK_NULL_HANDLE, pImageIndex);
+
+        if (result == VK_ERROR_OUT_OF_DATE_KHR) {
+            requestSwapChainRecreation();
+            return;
+        } else if (result != VK_SUCCESS && result != VK_SUBOPTIMAL_KHR) {
+            throw new RuntimeException("Failed to acquire swap chain image!");
+        }
+
+        final int imageIndex = pImageIndex.get(0);
+
+        if (imagesInFlight.containsKey(imageIndex))
+            vkWaitForFences(device, imagesInFlight.get(imageIndex).getFence(), true, 0xFFFFFFFFFFFFFFFFL);
+
+        imagesInFlight.put(imageIndex, thisFrame);
+
+        VkCommandBuffer commandBuffer = swapChain.getCommandBuffers().get(imageIndex);
+        vkResetCommandBuffer(commandBuffer, 0);
+
+        recordCommandBuffer(commandBuffer, thisFrame, imageIndex, clearColor);
+
+        thisFrame.getLinearAllocator().flush();
+        thisFrame.getUniformRing().flush();
+
+        VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack);
+        submitInfo.sType(VK_STRUCTURE_TYPE_SUBMIT_INFO);
+
+        submitInfo.waitSemaphoreCount(1);
+        submitInfo.pWaitSemaphores(thisFrame.pImageAvailableSemaphore());
+        // The swap chain image is first touched by the copy out of the render target
+        submitInfo.pWaitDstStageMask(stack.ints(VK_PIPELINE_STAGE_TRANSFER_BIT));
+
+        submitInfo.pSignalSemaphores(thisFrame.pRenderFinishedSemaphore());
+
+        submitInfo.pCommandBuffers(stack.pointers(swapChain.getCommandBuffers().get(imageIndex)));
+
+        vkResetFences(device, thisFrame.pFence());
+
+        VkPresentInfoKHR presentInfo = VkPresentInfoKHR.calloc(stack);
+        presentInfo.sType(VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+
+        presentInfo.pWaitSemaphores(thisFrame.pRenderFinishedSemaphore());
+
+        presentInfo.swapchainCount(1);
+        presentInfo.pSwapchains(stack.longs(swapChain.getId()));
+
+        presentInfo.pImageIndices(pImageIndex);
+
+        if (vkApplication.isDeviceExtensionEnabled(VK_KHR_INCREMENTAL_PRESENT_EXTENSION_NAME)) {
+            presentInfo.pNext(createPresentRegions(thisFrame.getDamage(), stack).address());
+        }
+
+        // Upload submits can come from other threads, possibly on the same queue
+        synchronized (vkApplication.getQueueLock()) {
             if (vkQueueSubmit(vkApplication.getGraphicsQueue(), submitInfo, thisFrame.getFence()) != VK_SUCCESS)
                 throw new RuntimeException("Failed to submit draw command buffer");
 
-            VkPresentInfoKHR presentInfo = VkPresentInfoKHR.calloc(stack);
-            presentInfo.sType(VK_STRUCTURE_TYPE_PRESENT_INFO_KHR);
+            result = vkQueuePresentKHR(vkApplication.getPresentQueue(), presentInfo);
+        }
 
-            presentInfo.pWaitSemaphores(thisFrame.pRenderFinishedSemaphore());
+        if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR) {
+            requestSwapChainRecreation();
+        } else if (result != VK_SUCCESS) {
+            throw new RuntimeException("Failed to present swap chain image!");
+        }
 
-            presentInfo.swapchainCount(1);
-            presentInfo.pSwapchains(stack.longs(swapChain.getId()));
+        currentFrame = (currentFrame + 1) % maxFramesInFlight;
 
-            presentInfo.pImageIndices(pImageIndex);
+        vkApplication.getMemoryAllocator().getTracker().endFrame();
+        vkApplication.getHandleTracker().nextFrame();
+    }
 
-            result = vkQueuePresentKHR(vkApplication.getPresentQueue(), presentInfo);
+    private void requestSwapChainRecreation() {
+        if (renderThread == null) {
+            vkApplication.recreateSwapChain();
+            return;
+        }
+
+        // The swap chain belongs to the main thread, which also lays out against its extent
+        vkApplication.setFramebufferResized(true);
+        vkApplication.getFrameScheduler().requestFrame();
+    }
+
+    private void collectFullDamage(Scene scene, DamageRegion damage) {
+        damage.clear();
+
+        boolean sceneDamaged = scene.takeFullDamage();
+        if (sceneDamaged || swapChain.getGeneration() != drawnGeneration) {
+            damage.addFull();
+            drawnGeneration = swapChain.getGeneration();
+        }
+    }
+
+    private void drawScene(Scene scene, Frame frame) {
+        DamageRegion damage = frame.getDamage();
+        collectFullDamage(scene, damage);
+
+        if (parallelRecorder != null) {
+            sceneChildren.clear();
+            sceneChildren.addAll(scene.getChildren());
+            parallelRecorder.draw(frame, currentFrame, sceneChildren);
+        } else {
+            drawer.identity(frame, currentFrame);
+            scene.drawPipeline(drawer);
+        }
+
+        VkExtent2D extent = swapChain.getExtent();
+        damage.finish(extent.width(), extent.height());
+    }
+
+    private static float[] getClearColor(Scene scene, float[] color) {
+        scene.getBackgroundColor().getRGBComponents(color);
+        color[3] = 1;
+        return color;
+    }
+
+    private VkPresentRegionsKHR createPresentRegions(DamageRegion damage, MemoryStack stack) {
+        List<Vector4f> rects = damage.getRects();
+
+        VkRectLayerKHR.Buffer rectangles = VkRectLayerKHR.calloc(rects.size(), stack);
+        for (int i = 0; i < rects.size(); i++) {
+            Vector4f rect = rects.get(i);
+            rectangles.get(i)
+                    .offset(VkOffset2D.calloc(stack).set((int) rect.x, (int) rect.y))
+                    .extent(VkExtent2D.calloc(stack).set((int) (rect.z - rect.x), (int) (rect.w - rect.y)))
+                    .layer(0);
+        }
+
+        VkPresentRegionKHR.Buffer region = VkPresentRegionKHR.calloc(1, stack);
+        region.get(0).pRectangles(rectangles);
+
+        return VkPresentRegionsKHR.calloc(stack)
+                .sType(VK_STRUCTURE_TYPE_PRESENT_REGIONS_KHR)
+                .pRegions(region);
+    }
+
+    private void writeFrameGlobals(UniformRing uniformRing, DamageRegion damage) {
+        VkExtent2D extent = swapChain.getExtent();
+        float width = extent.width();
+        float height = extent.height();
+
+        projection.identity()
+                .translate(-1, -1, 1)
+                .scale(2f / width, 2f / height, 1);
+
+        float[] globals = frameGlobals;
+        projection.get(globals);
+        globals[16] = width;
+        globals[17] = height;
+        globals[18] = 1f / width;
+        globals[19] = 1f / height;
+        globals[20] = (System.nanoTime() - startTime) / 1e9f;
+
+        List<Vector4f> rects = damage.getRects();
+        globals[21] = Float.intBitsToFloat(rects.size());
+        for (int i = 0; i < rects.size(); i++) {
+            Vector4f rect = rects.get(i);
+            globals[24 + i * 4] = rect.x;
+            globals[25 + i * 4] = rect.y;
+            globals[26 + i * 4] = rect.z;
+            globals[27 + i * 4] = rect.w;
+        }
+        // Slots past the damage count still hold last frame's rects; zeroed so the upload never carries stale data
+        Arrays.fill(globals, 24 + rects.size() * 4, globals.length, 0);
+
+        uniformRing.writeFrameGlobals(globals);
+        uniformRing.writeTransform(0, identity);
+    }
+
+    public static void setViewportAndScissor(VkCommandBuffer commandBuffer, VkExtent2D extent) {
+        setViewportAndScissor(commandBuffer, extent, null);
+    }
+
+    public static void setViewportAndScissor(VkCommandBuffer commandBuffer, VkExtent2D extent, DamageRegion damage) {
+        try (MemoryStack stack = stackPush()) {
+            VkViewport.Buffer viewport = VkViewport.calloc(1, stack);
+            viewport.x(0);
+            viewport.y(0);
+            viewport.width(extent.width());
+            viewport.height(extent.height());
+            viewport.minDepth(0);
+            viewport.maxDepth(1);
+            vkCmdSetViewport(commandBuffer, 0, viewport);
 
-            if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR) {
-                vkApplication.recreateSwapChain();
-            } else if (result != VK_SUCCESS) {
-                throw new RuntimeException("Failed to present swap chain image!");
+            VkRect2D.Buffer scissor = VkRect2D.calloc(1, stack);
+            if (damage == null || damage.isEmpty()) {
+                scissor.offset(VkOffset2D.calloc(stack).set(0, 0));
+                scissor.extent(extent);
+            } else {
+                setRect(scissor.get(0), damage.getBounds(), stack);
             }
+            vkCmdSetScissor(commandBuffer, 0, scissor);
+        }
+    }
 
-            currentFrame = (currentFrame + 1) % maxFramesInFlight;
+    static void executeCommands(VkCommandBuffer commandBuffer, List<VkCommandBuffer> secondaries) {
+        if (secondaries.isEmpty()) {
+            return;
+        }
 
-            scene.setDirty(false);
+        try (MemoryStack stack = stackPush()) {
+            PointerBuffer pCommandBuffers = stack.mallocPointer(secondaries.size());
+            secondaries.forEach(pCommandBuffers::put);
+            vkCmdExecuteCommands(commandBuffer, pCommandBuffers.flip());
+        }
+    }
+
+    private static void setRect(VkRect2D target, Vector4f rect, MemoryStack stack) {
+        target.offset(VkOffset2D.calloc(stack).set((int) rect.x, (int) rect.y));
+        target.extent(VkExtent2D.calloc(stack).set((int) (rect.z - rect.x), (int) (rect.w - rect.y)));
+    }
+
+    private static void clearDamage(VkCommandBuffer commandBuffer, DamageRegion damage, float[] color) {
+        try (MemoryStack stack = stackPush()) {
+            VkClearAttachment.Buffer attachment = VkClearAttachment.calloc(1, stack);
+            attachment.aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
+            attachment.colorAttachment(0);
+            attachment.clearValue().color().float32(stack.floats(color));
+
+            List<Vector4f> rects = damage.getRects();
+            VkClearRect.Buffer clearRects = VkClearRect.calloc(rects.size(), stack);
+            for (int i = 0; i < rects.size(); i++) {
+                setRect(clearRects.get(i).rect(), rects.get(i), stack);
+                clearRects.get(i).baseArrayLayer(0).layerCount(1);
+            }
+
+            vkCmdClearAttachments(commandBuffer, attachment, clearRects);
         }
     }
 
-    private void recordCommandBuffer(VkCommandBuffer commandBuffer, Frame frame, int imageIndex) {
+    private void recordCommandBuffer(VkCommandBuffer commandBuffer, Frame frame, int imageIndex, float[] color) {
         try (MemoryStack stack = stackPush()) {
             VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
             beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
 
+            DamageRegion damage = frame.getDamage();
+            long framebuffer = swapChain.getFramebuffer();
+
             VkRenderPassBeginInfo renderPassInfo = VkRenderPassBeginInfo.calloc(stack);
             renderPassInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_BEGIN_INFO);
-
             renderPassInfo.renderPass(swapChain.getRenderPass());
+            renderPassInfo.framebuffer(framebuffer);
+
+            // Cached bundles keep a full-extent scissor, since secondaries cannot inherit one set per frame,
+            // so their draws must stay inside the render area; the damage discard in the shaders still limits writes
+            boolean replaysBundles = parallelRecorder != null ? parallelRecorder.containsBundles() : drawer.getDisplayList().containsBundles();
 
             VkRect2D renderArea = VkRect2D.calloc(stack);
-            renderArea.offset(VkOffset2D.calloc(stack).set(0, 0));
-            renderArea.extent(swapChain.getExtent());
+            if (replaysBundles) {
+                renderArea.offset(VkOffset2D.calloc(stack).set(0, 0));
+                renderArea.extent(swapChain.getExtent());
+            } else {
+                setRect(renderArea, damage.getBounds(), stack);
+            }
             renderPassInfo.renderArea(renderArea);
 
-            Scene scene = vkApplication.getScene();
-
-            Color backgroundColor = scene == null ? Color.WHITE : scene.getBackgroundColor();
-            float[] color = backgroundColor.getRGBColorComponents(new float[4]);
-
-            VkClearValue.Buffer clearValues = VkClearValue.calloc(2, stack);
-            clearValues.get(0).color().float32(stack.floats(color));
-            clearValues.get(1).depthStencil().depth(1);
-            renderPassInfo.pClearValues(clearValues);
-
             if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS)
                 throw new RuntimeException("Failed to begin recording command buffer");
 
-            renderPassInfo.framebuffer(swapChain.getFrameBuffers().get(imageIndex));
+            swapChain.getRenderTarget().recordInitialize(commandBuffer);
 
-            VkViewport.Buffer viewport = VkViewport.malloc(1, stack);
-            viewport.x(0);
-            viewport.y(0);
-            viewport.width(swapChain.getExtent().width());
-            viewport.height(swapChain.getExtent().height());
-            viewport.maxDepth(0);
-            viewport.maxDepth(1);
-            vkCmdSetViewport(commandBuffer, 0, viewport);
+            gpuProfiler.beginFrame(commandBuffer, currentFrame);
+            int frameScope = gpuProfiler.beginScope(commandBuffer, currentFrame, "frame");
 
-            VkRect2D.Buffer scissor = VkRect2D.malloc(1, stack);
-            scissor.offset(VkOffset2D.malloc(stack).set(0, 0));
-            scissor.extent(swapChain.getExtent());
-            vkCmdSetScissor(commandBuffer, 0, scissor);
+            // Cached bundles and worker output are secondaries, and a subpass cannot mix them with inline commands
+            if (parallelRecorder != null || replaysBundles) {
+                secondaryCommandPool.reset(currentFrame);
+                secondaries.clear();
+
+                VkCommandBuffer clearCommandBuffer = secondaryCommandPool.obtain(currentFrame);
+                SecondaryCommandPool.begin(clearCommandBuffer, swapChain.getRenderPass(), framebuffer, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+                clearDamage(clearCommandBuffer, damage, color);
+                SecondaryCommandPool.end(clearCommandBuffer);
+                secondaries.add(clearCommandBuffer);
 
-            vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_INLINE);
-            {
-                if (scene != null) {
-                    scene.drawPipeline(drawer);
+                if (parallelRecorder != null) {
+                    parallelRecorder.record(currentFrame, framebuffer, secondaries);
+                } else {
+                    drawer.flushSecondaries(framebuffer, secondaryCommandPool, secondaries);
                 }
+
+                vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS);
+                executeCommands(commandBuffer, secondaries);
+            } else {
+                setViewportAndScissor(commandBuffer, swapChain.getExtent(), damage);
+
+                vkCmdBeginRenderPass(commandBuffer, renderPassInfo, VK_SUBPASS_CONTENTS_INLINE);
+
+                int clearScope = gpuProfiler.beginScope(commandBuffer, currentFrame, "clear");
+                clearDamage(commandBuffer, damage, color);
+                gpuProfiler.endScope(commandBuffer, currentFrame, clearScope);
+
+                drawer.flush(commandBuffer, gpuProfiler);
             }
             vkCmdEndRenderPass(commandBuffer);
 
+            if (log.isDebugEnabled()) {
+                CommandRecorder.Stats stats = parallelRecorder != null ? parallelRecorder.getStats() : drawer.getRenderer().getRecorder().getStats();
+                log.debug("Recorded frame {} with {} damage rects: {}", currentFrame, damage.getRects().size(), stats);
+            }
+
+            int copyScope = gpuProfiler.beginScope(commandBuffer, currentFrame, "copy");
+            swapChain.getRenderTarget().recordCopyTo(commandBuffer, swapChain.getImages().get(imageIndex));
+            gpuProfiler.endScope(commandBuffer, currentFrame, copyScope);
+            gpuProfiler.endScope(commandBuffer, currentFrame, frameScope);
+
             if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS)
                 throw new RuntimeException("Failed to record command buffer");
         }
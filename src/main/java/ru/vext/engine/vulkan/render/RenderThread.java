@@ -0,0 +1,108 @@
+package ru.vext.engine.vulkan.render;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.vext.engine.vulkan.render.displaylist.DisplayList;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+@Slf4j
+public class RenderThread {
+
+    public static final String ENABLE_PROPERTY = "vext.renderThread";
+
+    // One being filled by the UI thread, one pending and one being rendered
+    private static final int DISPLAY_LIST_COUNT = 3;
+
+    private final Consumer<FrameSnapshot> renderer;
+    private final Thread thread;
+
+    // Display lists hold direct memory, which only the GC would return, so they are recycled instead of reallocated
+    private final Deque<DisplayList> freeDisplayLists = new ArrayDeque<>();
+
+    private FrameSnapshot pending;
+    private boolean running = true;
+    private volatile RuntimeException failure;
+
+    public RenderThread(Consumer<FrameSnapshot> renderer) {
+        this.renderer = renderer;
+
+        for (int i = 0; i < DISPLAY_LIST_COUNT; i++) {
+            freeDisplayLists.push(new DisplayList());
+        }
+
+        thread = new Thread(this::run, "vext-render");
+        thread.setDaemon(true);
+        thread.start();
+
+        log.info("Rendering on a dedicated render thread");
+    }
+
+    public synchronized DisplayList obtainDisplayList() {
+        DisplayList displayList = freeDisplayLists.poll();
+        if (displayList == null) {
+            displayList = new DisplayList();
+        }
+        displayList.clear();
+        return displayList;
+    }
+
+    private synchronized void recycle(DisplayList displayList) {
+        if (freeDisplayLists.size() < DISPLAY_LIST_COUNT) {
+            freeDisplayLists.push(displayList);
+        }
+    }
+
+    // Only the latest snapshot is kept, a slow frame never queues up stale layouts behind it
+    public synchronized void publish(FrameSnapshot snapshot) {
+        if (failure != null) {
+            throw new RuntimeException("Render thread failed", failure);
+        }
+
+        if (pending != null) {
+            snapshot.mergeDamage(pending);
+            recycle(pending.getDisplayList());
+        }
+        pending = snapshot;
+        notifyAll();
+    }
+
+    private synchronized FrameSnapshot take() throws InterruptedException {
+        while (running && pending == null) {
+            wait();
+        }
+
+        FrameSnapshot snapshot = pending;
+        pending = null;
+        return running ? snapshot : null;
+    }
+
+    private void run() {
+        try {
+            FrameSnapshot snapshot;
+            while ((snapshot = take()) != null) {
+                renderer.accept(snapshot);
+                recycle(snapshot.getDisplayList());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("Render thread failed", e);
+            failure = e;
+        }
+    }
+
+    public void stop() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.vext.engine.vulkan.render.bundle;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+public class BundleRegistry {
+
+    // Containers that stay clean for this many consecutive frames are promoted to a cached command bundle
+    public static final int PROMOTION_FRAMES = 120;
+
+    private final VkApplication vkApplication;
+    private final int frames;
+
+    private final List<CommandBundle> bundles = new ArrayList<>();
+
+    public BundleRegistry(VkApplication vkApplication, int frames) {
+        this.vkApplication = vkApplication;
+        this.frames = frames;
+    }
+
+    public synchronized CommandBundle create() {
+        // Transform slot 0 is the identity used by everything drawn outside a bundle
+        int transformSlot = bundles.size() + 1;
+        if (transformSlot >= UniformRing.MAX_TRANSFORMS) {
+            return null;
+        }
+
+        CommandBundle bundle = new CommandBundle(vkApplication, bundles.size(), transformSlot, frames);
+        bundles.add(bundle);
+        log.debug("Created command bundle {}", bundle.getId());
+        return bundle;
+    }
+
+    public synchronized CommandBundle get(int id) {
+        return bundles.get(id);
+    }
+
+    public synchronized void cleanup() {
+        bundles.forEach(CommandBundle::cleanup);
+        bundles.clear();
+    }
+}
@@ -0,0 +1,97 @@
+package ru.vext.engine.vulkan.render.bundle;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.joml.Matrix4f;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.render.Drawer;
+import ru.vext.engine.vulkan.render.RenderPipeline;
+import ru.vext.engine.vulkan.swapchain.SwapChain;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+public class CommandBundle {
+
+    private static final long INSTANCE_CHUNK_SIZE = 64 * 1024;
+
+    @Getter
+    private final int id;
+    @Getter
+    private final int transformSlot;
+
+    private final SecondaryCommandPool commandPool;
+    private final VkCommandBuffer[] commandBuffers;
+    private final LinearAllocator[] allocators;
+    private final int[] recordedGeneration;
+
+    @Getter
+    private float[] layout = new float[0];
+    @Setter
+    private Consumer<Drawer> content;
+    @Getter
+    private final Matrix4f entryMatrix = new Matrix4f();
+
+    CommandBundle(VkApplication vkApplication, int id, int transformSlot, int frames) {
+        this.id = id;
+        this.transformSlot = transformSlot;
+
+        // Each bundle owns its pool, so it can be re-recorded from whichever thread replays it
+        commandPool = new SecondaryCommandPool(vkApplication, frames);
+        commandBuffers = new VkCommandBuffer[frames];
+        allocators = new LinearAllocator[frames];
+        recordedGeneration = new int[frames];
+
+        for (int i = 0; i < frames; i++) {
+            allocators[i] = new LinearAllocator(vkApplication, INSTANCE_CHUNK_SIZE);
+        }
+        Arrays.fill(recordedGeneration, -1);
+    }
+
+    // Callers reuse their layout array every frame, so the bundle keeps a copy
+    public void setLayout(float[] layout) {
+        if (this.layout.length != layout.length) {
+            this.layout = new float[layout.length];
+        }
+        System.arraycopy(layout, 0, this.layout, 0, layout.length);
+    }
+
+    public synchronized void invalidate() {
+        Arrays.fill(recordedGeneration, -1);
+    }
+
+    public synchronized VkCommandBuffer obtain(int frameIndex, Drawer drawer, SwapChain swapChain) {
+        if (recordedGeneration[frameIndex] == swapChain.getGeneration()) {
+            return commandBuffers[frameIndex];
+        }
+
+        // Safe to overwrite: this frame slot's previous submission has already been waited on
+        commandPool.reset(frameIndex);
+        VkCommandBuffer commandBuffer = commandPool.obtain(frameIndex);
+        LinearAllocator allocator = allocators[frameIndex];
+        allocator.reset();
+
+        SecondaryCommandPool.begin(commandBuffer, swapChain.getRenderPass(), 0, 0);
+        RenderPipeline.setViewportAndScissor(commandBuffer, swapChain.getExtent());
+
+        drawer.identityBundle(frameIndex, allocator, transformSlot);
+        content.accept(drawer);
+        drawer.flush(commandBuffer);
+
+        SecondaryCommandPool.end(commandBuffer);
+        allocator.flush();
+
+        commandBuffers[frameIndex] = commandBuffer;
+        recordedGeneration[frameIndex] = swapChain.getGeneration();
+        return commandBuffer;
+    }
+
+    void cleanup() {
+        commandPool.cleanup();
+        for (LinearAllocator allocator : allocators) {
+            allocator.cleanup();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ru.vext.engine.vulkan.render.bundle;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class SecondaryCommandPool {
+
+    private final VkApplication vkApplication;
+    private final VkDevice device;
+
+    private final long commandPool;
+    private final List<List<VkCommandBuffer>> commandBuffers = new ArrayList<>();
+    private final int[] used;
+
+    public SecondaryCommandPool(VkApplication vkApplication, int frames) {
+        this.vkApplication = vkApplication;
+        this.device = vkApplication.getDevice();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandPoolCreateInfo commandPoolInfo = VkCommandPoolCreateInfo.calloc(stack);
+            commandPoolInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            commandPoolInfo.flags(VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
+            commandPoolInfo.queueFamilyIndex(vkApplication.getQueueFamilyIndices().getGraphicsFamily());
+
+            LongBuffer pCommandPool = stack.mallocLong(1);
+            if (vkCreateCommandPool(device, commandPoolInfo, null, pCommandPool) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create secondary command pool");
+            }
+
+            commandPool = pCommandPool.get(0);
+            vkApplication.getHandleTracker().register(HandleType.COMMAND_POOL, commandPool);
+        }
+
+        for (int i = 0; i < frames; i++) {
+            commandBuffers.add(new ArrayList<>());
+        }
+        used = new int[frames];
+    }
+
+    public void reset(int frameIndex) {
+        used[frameIndex] = 0;
+    }
+
+    public VkCommandBuffer obtain(int frameIndex) {
+        List<VkCommandBuffer> frameBuffers = commandBuffers.get(frameIndex);
+        if (used[frameIndex] == frameBuffers.size()) {
+            frameBuffers.add(allocate());
+        }
+
+        VkCommandBuffer commandBuffer = frameBuffers.get(used[frameIndex]++);
+        vkResetCommandBuffer(commandBuffer, 0);
+        return commandBuffer;
+    }
+
+    private VkCommandBuffer allocate() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBufferAllocateInfo allocateInfo = VkCommandBufferAllocateInfo.calloc(stack);
+            allocateInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO);
+            allocateInfo.commandPool(commandPool);
+            allocateInfo.level(VK_COMMAND_BUFFER_LEVEL_SECONDARY);
+            allocateInfo.commandBufferCount(1);
+
+            PointerBuffer pCommandBuffer = stack.mallocPointer(1);
+            if (vkAllocateCommandBuffers(device, allocateInfo, pCommandBuffer) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate secondary command buffer");
+            }
+
+            vkApplication.getHandleTracker().register(HandleType.COMMAND_BUFFER, pCommandBuffer.get(0));
+            return new VkCommandBuffer(pCommandBuffer.get(0), device);
+        }
+    }
+
+    public static void begin(VkCommandBuffer commandBuffer, long renderPass, long framebuffer, int flags) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBufferInheritanceInfo inheritanceInfo = VkCommandBufferInheritanceInfo.calloc(stack);
+            inheritanceInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_INHERITANCE_INFO);
+            inheritanceInfo.renderPass(renderPass);
+            inheritanceInfo.subpass(0);
+            inheritanceInfo.framebuffer(framebuffer);
+
+            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack);
+            beginInfo.sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO);
+            beginInfo.flags(VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT | flags);
+            beginInfo.pInheritanceInfo(inheritanceInfo);
+
+            if (vkBeginCommandBuffer(commandBuffer, beginInfo) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to begin secondary command buffer");
+            }
+        }
+    }
+
+    public static void end(VkCommandBuffer commandBuffer) {
+        if (vkEndCommandBuffer(commandBuffer) != VK_SUCCESS) {
+            throw new RuntimeException("Failed to record secondary command buffer");
+        }
+    }
+
+    public void cleanup() {
+        // Destroying the pool frees its command buffers as well
+        for (List<VkCommandBuffer> frameBuffers : commandBuffers) {
+            frameBuffers.forEach(commandBuffer -> vkApplication.getHandleTracker().unregister(HandleType.COMMAND_BUFFER, commandBuffer.address()));
+            frameBuffers.clear();
+        }
+
+        vkDestroyCommandPool(device, commandPool, null);
+        vkApplication.getHandleTracker().unregister(HandleType.COMMAND_POOL, commandPool);
+    }
+}
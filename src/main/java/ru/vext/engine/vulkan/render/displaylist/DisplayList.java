@@ -0,0 +1,215 @@
+package ru.vext.engine.vulkan.render.displaylist;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import ru.vext.engine.resource.font.BakedFont;
+import ru.vext.engine.resource.font.Glyph;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class DisplayList {
+
+    public static final int OP_PANEL = 1;
+    public static final int OP_TEXT = 2;
+    public static final int OP_LAYER = 3;
+    public static final int OP_BUNDLE = 4;
+
+    // op, mat4, width, height, border, rgba, clip, nine-slice flag
+    public static final int PANEL_SIZE = Integer.BYTES * (1 + 16 + 3 + 4 + 4 + 1);
+    // op, font, glyph count, mat4, rgba, clip; followed by (offsetX, character) per glyph
+    public static final int TEXT_HEADER_SIZE = Integer.BYTES * (1 + 2 + 16 + 4 + 4);
+    public static final int TEXT_GLYPH_SIZE = Integer.BYTES * 2;
+    public static final int LAYER_SIZE = Integer.BYTES * 2;
+    // op, bundle id, mat4 entry transform
+    public static final int BUNDLE_SIZE = Integer.BYTES * (2 + 16);
+
+    private ByteBuffer data;
+
+    public DisplayList() {
+        this(4096);
+    }
+
+    public DisplayList(int capacity) {
+        data = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    public int size() {
+        return data.position();
+    }
+
+    public boolean isEmpty() {
+        return data.position() == 0;
+    }
+
+    public void clear() {
+        data.clear();
+    }
+
+    public void panel(Matrix4f matrix, float width, float height, float border, float[] rgba, Vector4f clip, boolean nineSlice) {
+        ensureCapacity(PANEL_SIZE);
+        data.putInt(OP_PANEL);
+        putMatrix(matrix);
+        data.putFloat(width).putFloat(height).putFloat(border);
+        putColor(rgba);
+        putClip(clip);
+        data.putInt(nineSlice ? 1 : 0);
+    }
+
+    public void text(int font, Matrix4f matrix, float[] rgba, Vector4f clip, float[] offsets, char[] characters, int count) {
+        ensureCapacity(TEXT_HEADER_SIZE + TEXT_GLYPH_SIZE * count);
+        data.putInt(OP_TEXT);
+        data.putInt(font).putInt(count);
+        putMatrix(matrix);
+        putColor(rgba);
+        putClip(clip);
+        for (int i = 0; i < count; i++) {
+            data.putFloat(offsets[i]).putInt(characters[i]);
+        }
+    }
+
+    public void layer(int layer) {
+        ensureCapacity(LAYER_SIZE);
+        data.putInt(OP_LAYER).putInt(layer);
+    }
+
+    public void bundle(int bundle, Matrix4f matrix) {
+        ensureCapacity(BUNDLE_SIZE);
+        data.putInt(OP_BUNDLE).putInt(bundle);
+        putMatrix(matrix);
+    }
+
+    public int getOpSize(int offset) {
+        int op = data.getInt(offset);
+        return switch (op) {
+            case OP_PANEL -> PANEL_SIZE;
+            case OP_TEXT -> TEXT_HEADER_SIZE + TEXT_GLYPH_SIZE * data.getInt(offset + 8);
+            case OP_LAYER -> LAYER_SIZE;
+            case OP_BUNDLE -> BUNDLE_SIZE;
+            default -> throw new IllegalStateException("Unknown display list op " + op + " at " + offset);
+        };
+    }
+
+    public boolean containsBundles() {
+        for (int offset = 0; offset < size(); offset += getOpSize(offset)) {
+            if (data.getInt(offset) == OP_BUNDLE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Vector4f getBounds(int start, int end, FontTable fontTable, Vector4f bounds) {
+        Matrix4f matrix = new Matrix4f();
+        Vector4f clip = new Vector4f();
+        Vector3f min = new Vector3f();
+        Vector3f max = new Vector3f();
+
+        bounds.set(Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+
+        for (int offset = start; offset < end; offset += getOpSize(offset)) {
+            switch (data.getInt(offset)) {
+                case OP_PANEL -> {
+                    getMatrix(offset + 4, matrix);
+                    getClip(offset + 4 + 16 * Float.BYTES + 12 + 16, clip);
+                    matrix.transformAab(0, 0, 0, getFloat(offset + 4 + 16 * Float.BYTES), getFloat(offset + 8 + 16 * Float.BYTES), 0, min, max);
+                    include(bounds, min, max, clip);
+                }
+                case OP_TEXT -> {
+                    BakedFont font = fontTable.get(data.getInt(offset + 4));
+                    int count = data.getInt(offset + 8);
+                    getMatrix(offset + 12, matrix);
+                    getClip(offset + 12 + 16 * Float.BYTES + 16, clip);
+
+                    for (int i = 0; i < count; i++) {
+                        int position = offset + TEXT_HEADER_SIZE + i * TEXT_GLYPH_SIZE;
+                        float offsetX = data.getFloat(position);
+                        Glyph glyph = font.getGlyphs().get((char) data.getInt(position + 4));
+
+                        matrix.transformAab(
+                                offsetX, -glyph.getOffsetY() - glyph.getHeight(), 0,
+                                offsetX + glyph.getWidth(), -glyph.getOffsetY(), 0,
+                                min, max
+                        );
+                        include(bounds, min, max, clip);
+                    }
+                }
+                // Bundle contents are recorded elsewhere, so they may cover anything
+                case OP_BUNDLE -> bounds.set(-Float.MAX_VALUE, -Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+                default -> {
+                }
+            }
+        }
+
+        if (bounds.x >= bounds.z || bounds.y >= bounds.w) {
+            bounds.set(0);
+        }
+        return bounds;
+    }
+
+    private static void include(Vector4f bounds, Vector3f min, Vector3f max, Vector4f clip) {
+        float minX = Math.max(min.x, clip.x), minY = Math.max(min.y, clip.y);
+        float maxX = Math.min(max.x, clip.z), maxY = Math.min(max.y, clip.w);
+        if (minX >= maxX || minY >= maxY) {
+            return;
+        }
+
+        bounds.set(
+                Math.min(bounds.x, minX), Math.min(bounds.y, minY),
+                Math.max(bounds.z, maxX), Math.max(bounds.w, maxY)
+        );
+    }
+
+    public void append(DisplayList other) {
+        append(other, 0, other.size());
+    }
+
+    public void append(DisplayList other, int start, int end) {
+        ensureCapacity(end - start);
+        ByteBuffer source = other.data.duplicate();
+        source.position(start).limit(end);
+        data.put(source);
+    }
+
+    public int getInt(int offset) {
+        return data.getInt(offset);
+    }
+
+    public float getFloat(int offset) {
+        return data.getFloat(offset);
+    }
+
+    public void getMatrix(int offset, Matrix4f matrix) {
+        matrix.set(offset, data);
+    }
+
+    public void getClip(int offset, Vector4f clip) {
+        clip.set(offset, data);
+    }
+
+    private void putMatrix(Matrix4f matrix) {
+        matrix.get(data.position(), data);
+        data.position(data.position() + 16 * Float.BYTES);
+    }
+
+    private void putColor(float[] rgba) {
+        data.putFloat(rgba[0]).putFloat(rgba[1]).putFloat(rgba[2]).putFloat(rgba[3]);
+    }
+
+    private void putClip(Vector4f clip) {
+        data.putFloat(clip.x).putFloat(clip.y).putFloat(clip.z).putFloat(clip.w);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (data.remaining() >= bytes) {
+            return;
+        }
+
+        int capacity = Math.max(data.capacity() * 2, data.position() + bytes);
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        data.flip();
+        grown.put(data);
+        data = grown;
+    }
+}
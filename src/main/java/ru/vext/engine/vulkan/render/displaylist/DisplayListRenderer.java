@@ -0,0 +1,238 @@
+package ru.vext.engine.vulkan.render.displaylist;
+
+import lombok.Getter;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+import ru.vext.engine.resource.font.BakedFont;
+import ru.vext.engine.resource.font.Glyph;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.LinearAllocator;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.render.CommandRecorder;
+import ru.vext.engine.vulkan.render.DamageRegion;
+import ru.vext.engine.vulkan.render.DrawQueue;
+import ru.vext.engine.vulkan.render.Drawer;
+import ru.vext.engine.vulkan.render.GlyphBatch;
+import ru.vext.engine.vulkan.render.PanelBatch;
+import ru.vext.engine.vulkan.render.RenderPipeline;
+import ru.vext.engine.vulkan.render.bundle.BundleRegistry;
+import ru.vext.engine.vulkan.render.bundle.CommandBundle;
+import ru.vext.engine.vulkan.render.bundle.SecondaryCommandPool;
+import ru.vext.engine.vulkan.swapchain.SwapChain;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.vulkan.VK10.VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT;
+
+public class DisplayListRenderer {
+
+    private final VkApplication vkApplication;
+    private final SwapChain swapChain;
+
+    private final PanelBatch panelBatch = new PanelBatch();
+    private final GlyphBatch glyphBatch = new GlyphBatch();
+    private final DrawQueue drawQueue = new DrawQueue();
+
+    @Getter
+    private final CommandRecorder recorder = new CommandRecorder();
+
+    @Getter
+    private final FontTable fontTable;
+    private final BundleRegistry bundleRegistry;
+    private Drawer bundleDrawer;
+
+    private final Matrix4f matrix = new Matrix4f();
+    private final Vector4f clip = new Vector4f();
+    private final float[] rgba = new float[4];
+
+    private LinearAllocator allocator;
+    private DamageRegion damage;
+    private int frameIndex;
+    private int transformSlot;
+    private int layer;
+
+    public DisplayListRenderer(VkApplication vkApplication, SwapChain swapChain, FontTable fontTable, BundleRegistry bundleRegistry) {
+        this.vkApplication = vkApplication;
+        this.swapChain = swapChain;
+        this.fontTable = fontTable;
+        this.bundleRegistry = bundleRegistry;
+    }
+
+    public void render(DisplayList displayList, LinearAllocator allocator, int frameIndex, int transformSlot, DamageRegion damage) {
+        this.allocator = allocator;
+        this.damage = damage;
+        this.frameIndex = frameIndex;
+        this.transformSlot = transformSlot;
+        this.layer = 0;
+
+        int offset = 0;
+        while (offset < displayList.size()) {
+            offset = replay(displayList, offset);
+        }
+
+        finish();
+    }
+
+    public void renderSecondaries(DisplayList displayList, LinearAllocator allocator, UniformRing uniformRing, int frameIndex,
+                                  DamageRegion damage, long framebuffer, SecondaryCommandPool commandPool, List<VkCommandBuffer> commandBuffers) {
+        this.allocator = allocator;
+        this.damage = damage;
+        this.frameIndex = frameIndex;
+        this.transformSlot = 0;
+        this.layer = 0;
+
+        VkCommandBuffer commandBuffer = null;
+
+        int offset = 0;
+        while (offset < displayList.size()) {
+            if (displayList.getInt(offset) == DisplayList.OP_BUNDLE) {
+                if (commandBuffer != null) {
+                    finish();
+                    SecondaryCommandPool.end(commandBuffer);
+                    commandBuffers.add(commandBuffer);
+                    commandBuffer = null;
+                }
+
+                commandBuffers.add(replayBundle(displayList, offset, uniformRing));
+                offset += DisplayList.BUNDLE_SIZE;
+                continue;
+            }
+
+            // Everything between two bundles is recorded into a transient secondary of its own
+            if (commandBuffer == null) {
+                commandBuffer = commandPool.obtain(frameIndex);
+                SecondaryCommandPool.begin(commandBuffer, swapChain.getRenderPass(), framebuffer, VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+                RenderPipeline.setViewportAndScissor(commandBuffer, swapChain.getExtent(), damage);
+                recorder.begin(commandBuffer, frameIndex);
+            }
+
+            offset = replay(displayList, offset);
+        }
+
+        if (commandBuffer != null) {
+            finish();
+            SecondaryCommandPool.end(commandBuffer);
+            commandBuffers.add(commandBuffer);
+        }
+    }
+
+    private int replay(DisplayList displayList, int offset) {
+        int op = displayList.getInt(offset);
+
+        return switch (op) {
+            case DisplayList.OP_PANEL -> replayPanel(displayList, offset);
+            case DisplayList.OP_TEXT -> replayText(displayList, offset);
+            case DisplayList.OP_LAYER -> replayLayer(displayList, offset);
+            case DisplayList.OP_BUNDLE -> throw new IllegalStateException("Command bundles can only be replayed into secondary command buffers");
+            default -> throw new IllegalStateException("Unknown display list op " + op + " at " + offset);
+        };
+    }
+
+    private void finish() {
+        flushGlyphs();
+        flushPanels();
+        drawQueue.record(recorder, damage);
+    }
+
+    private VkCommandBuffer replayBundle(DisplayList displayList, int offset, UniformRing uniformRing) {
+        CommandBundle bundle = bundleRegistry.get(displayList.getInt(offset + Integer.BYTES));
+
+        // The entry transform changes every frame without touching the recorded commands
+        displayList.getMatrix(offset + 2 * Integer.BYTES, matrix);
+        uniformRing.writeTransform(bundle.getTransformSlot(), matrix);
+
+        if (bundleDrawer == null) {
+            bundleDrawer = new Drawer(vkApplication, swapChain, fontTable, null);
+        }
+        return bundle.obtain(frameIndex, bundleDrawer, swapChain);
+    }
+
+    private int replayPanel(DisplayList displayList, int offset) {
+        int position = offset + Integer.BYTES;
+        displayList.getMatrix(position, matrix);
+        position += 16 * Float.BYTES;
+
+        float width = displayList.getFloat(position);
+        float height = displayList.getFloat(position + 4);
+        float border = displayList.getFloat(position + 8);
+        position += 12;
+
+        readColor(displayList, position);
+        position += 16;
+
+        displayList.getClip(position, clip);
+        position += 16;
+
+        boolean nineSlice = displayList.getInt(position) != 0;
+
+        flushGlyphs();
+        if (!panelBatch.canAppend(nineSlice)) {
+            flushPanels();
+        }
+        panelBatch.add(matrix, width, height, border, rgba, clip, nineSlice);
+
+        return offset + DisplayList.PANEL_SIZE;
+    }
+
+    private int replayText(DisplayList displayList, int offset) {
+        int position = offset + Integer.BYTES;
+        int fontId = displayList.getInt(position);
+        BakedFont font = fontTable.get(fontId);
+        int count = displayList.getInt(position + 4);
+        position += 8;
+
+        displayList.getMatrix(position, matrix);
+        position += 16 * Float.BYTES;
+
+        readColor(displayList, position);
+        position += 16;
+
+        displayList.getClip(position, clip);
+        position += 16;
+
+        flushPanels();
+        if (!glyphBatch.canAppend(fontId)) {
+            flushGlyphs();
+        }
+
+        Map<Character, Glyph> glyphs = font.getGlyphs();
+        for (int i = 0; i < count; i++) {
+            float offsetX = displayList.getFloat(position);
+            Glyph glyph = glyphs.get((char) displayList.getInt(position + 4));
+            glyphBatch.add(fontId, matrix, offsetX, glyph, rgba, clip);
+            position += DisplayList.TEXT_GLYPH_SIZE;
+        }
+
+        return offset + DisplayList.TEXT_HEADER_SIZE + DisplayList.TEXT_GLYPH_SIZE * count;
+    }
+
+    private int replayLayer(DisplayList displayList, int offset) {
+        int layer = displayList.getInt(offset + Integer.BYTES);
+        if (this.layer != layer) {
+            flushGlyphs();
+            flushPanels();
+            this.layer = layer;
+        }
+        return offset + DisplayList.LAYER_SIZE;
+    }
+
+    private void readColor(DisplayList displayList, int position) {
+        for (int i = 0; i < 4; i++) {
+            rgba[i] = displayList.getFloat(position + i * Float.BYTES);
+        }
+    }
+
+    private void flushGlyphs() {
+        if (glyphBatch.isEmpty()) {
+            return;
+        }
+
+        glyphBatch.flush(drawQueue, allocator, frameIndex, layer, transformSlot, swapChain.getGraphicsPipeline("text"));
+    }
+
+    private void flushPanels() {
+        panelBatch.flush(drawQueue, allocator, frameIndex, layer, transformSlot, swapChain.getGraphicsPipeline("default"), vkApplication.getDefaultBuffers());
+    }
+}
@@ -0,0 +1,82 @@
+package ru.vext.engine.vulkan.render.displaylist;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import ru.vext.engine.resource.font.BakedFont;
+import ru.vext.engine.resource.font.FontLoader;
+import ru.vext.engine.resource.font.Glyph;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.BufferType;
+import ru.vext.engine.vulkan.buffer.ImageView;
+import ru.vext.engine.vulkan.buffer.MemoryBuffer;
+import ru.vext.engine.vulkan.buffer.MemoryCategory;
+
+import java.util.*;
+
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_STORAGE_BUFFER_BIT;
+
+@Slf4j
+public class FontTable {
+
+    // Size of the atlas array in the text pipeline's descriptor set
+    public static final int MAX_FONTS = 16;
+
+    public static final int GLYPHS_PER_FONT = FontLoader.GLYPH_COUNT;
+
+    // Ids double as atlas array indices and are fixed for the table's lifetime, so cached segments stay valid on any thread
+    private final List<BakedFont> fonts;
+    private final Map<BakedFont, Integer> fontIds = new IdentityHashMap<>();
+
+    // Glyph metrics of every font back to back, font id * GLYPHS_PER_FONT + character
+    @Getter
+    private final MemoryBuffer glyphBuffer;
+
+    public FontTable(VkApplication vkApplication, Collection<BakedFont> fonts) {
+        if (fonts.size() > MAX_FONTS) {
+            throw new RuntimeException("Failed to create font table: " + fonts.size() + " fonts loaded, at most " + MAX_FONTS + " supported");
+        }
+
+        this.fonts = new ArrayList<>(fonts);
+        this.fonts.sort(Comparator.comparing(BakedFont::getKey));
+
+        float[] data = new float[Math.max(1, this.fonts.size()) * GLYPHS_PER_FONT * Glyph.SIZE];
+        for (int i = 0; i < this.fonts.size(); i++) {
+            BakedFont font = this.fonts.get(i);
+            fontIds.put(font, i);
+            System.arraycopy(font.getGlyphData(), 0, data, i * GLYPHS_PER_FONT * Glyph.SIZE, GLYPHS_PER_FONT * Glyph.SIZE);
+        }
+
+        glyphBuffer = new MemoryBuffer(vkApplication, data, BufferType.USAGE_INDEX_TRANSFER_DSC | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, BufferType.MEMORY_TYPE_GPU_LOCAL);
+        glyphBuffer.setMemoryCategory(MemoryCategory.GLYPH_DATA);
+
+        log.debug("Created font table with {} fonts", this.fonts.size());
+    }
+
+    public int getId(BakedFont font) {
+        Integer id = fontIds.get(font);
+        if (id == null) {
+            throw new RuntimeException("Font " + font.getKey() + " is not registered in the font table");
+        }
+        return id;
+    }
+
+    public BakedFont get(int id) {
+        return fonts.get(id);
+    }
+
+    public boolean isEmpty() {
+        return fonts.isEmpty();
+    }
+
+    public List<ImageView> getAtlases() {
+        List<ImageView> atlases = new ArrayList<>(fonts.size());
+        for (BakedFont font : fonts) {
+            atlases.add(font.getImageView());
+        }
+        return atlases;
+    }
+
+    public void cleanup() {
+        glyphBuffer.cleanup();
+    }
+}
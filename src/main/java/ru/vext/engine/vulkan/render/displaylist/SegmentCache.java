@@ -0,0 +1,53 @@
+package ru.vext.engine.vulkan.render.displaylist;
+
+import lombok.Getter;
+import org.joml.Matrix4f;
+import org.joml.Vector4f;
+
+import java.util.Arrays;
+
+@Getter
+public class SegmentCache {
+
+    private final DisplayList displayList = new DisplayList(256);
+
+    private final Matrix4f entryMatrix = new Matrix4f();
+    private final Vector4f entryClip = new Vector4f();
+    private int entryLayer;
+    private float[] entryLayout = new float[0];
+
+    private boolean valid;
+    private int start;
+
+    public boolean matches(Matrix4f matrix, Vector4f clip, int layer, float[] layout) {
+        return valid
+                && entryMatrix.equals(matrix)
+                && entryClip.equals(clip)
+                && entryLayer == layer
+                && Arrays.equals(entryLayout, layout);
+    }
+
+    public void begin(int start, Matrix4f matrix, Vector4f clip, int layer, float[] layout) {
+        this.start = start;
+        this.valid = false;
+
+        entryMatrix.set(matrix);
+        entryClip.set(clip);
+        entryLayer = layer;
+        // Callers reuse their layout array every frame, so the cache keeps a copy
+        if (entryLayout.length != layout.length) {
+            entryLayout = new float[layout.length];
+        }
+        System.arraycopy(layout, 0, entryLayout, 0, layout.length);
+    }
+
+    public void end(DisplayList frameList) {
+        displayList.clear();
+        displayList.append(frameList, start, frameList.size());
+        valid = true;
+    }
+
+    public void invalidate() {
+        valid = false;
+    }
+}
@@ -0,0 +1,78 @@
+package ru.vext.engine.vulkan.sampler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkSamplerCreateInfo;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class SamplerCache {
+
+    private final VkDevice device;
+    private final HandleTracker handleTracker;
+
+    private final Map<SamplerKey, Long> samplers = new HashMap<>();
+
+    public SamplerCache(VkApplication vkApplication) {
+        this.device = vkApplication.getDevice();
+        this.handleTracker = vkApplication.getHandleTracker();
+    }
+
+    public synchronized long get(SamplerKey key) {
+        Long sampler = samplers.get(key);
+        if (sampler == null) {
+            sampler = createSampler(key);
+            samplers.put(key, sampler);
+            log.debug("Created sampler {} ({} cached)", key, samplers.size());
+        }
+        return sampler;
+    }
+
+    private long createSampler(SamplerKey key) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkSamplerCreateInfo samplerInfo = VkSamplerCreateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_SAMPLER_CREATE_INFO)
+                    .magFilter(key.magFilter())
+                    .minFilter(key.minFilter())
+                    .addressModeU(key.addressModeU())
+                    .addressModeV(key.addressModeV())
+                    .addressModeW(key.addressModeW())
+                    .anisotropyEnable(key.isAnisotropyEnabled())
+                    .maxAnisotropy(Math.max(key.maxAnisotropy(), 1))
+                    .borderColor(VK_BORDER_COLOR_INT_OPAQUE_BLACK)
+                    .unnormalizedCoordinates(false)
+                    .compareEnable(false)
+                    .compareOp(VK_COMPARE_OP_ALWAYS)
+                    .mipmapMode(key.mipmapMode())
+                    .mipLodBias(0.0f)
+                    .minLod(0.0f)
+                    .maxLod(key.maxLod());
+
+            LongBuffer pSampler = stack.mallocLong(1);
+
+            if (vkCreateSampler(device, samplerInfo, null, pSampler) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create sampler");
+            }
+
+            handleTracker.register(HandleType.SAMPLER, pSampler.get(0));
+            return pSampler.get(0);
+        }
+    }
+
+    public synchronized void cleanup() {
+        for (long sampler : samplers.values()) {
+            vkDestroySampler(device, sampler, null);
+            handleTracker.unregister(HandleType.SAMPLER, sampler);
+        }
+        samplers.clear();
+    }
+}
@@ -0,0 +1,24 @@
+package ru.vext.engine.vulkan.sampler;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public record SamplerKey(int magFilter, int minFilter, int mipmapMode,
+                         int addressModeU, int addressModeV, int addressModeW,
+                         float maxAnisotropy, float maxLod) {
+
+    public static final SamplerKey LINEAR_REPEAT = new SamplerKey(
+            VK_FILTER_LINEAR, VK_FILTER_LINEAR, VK_SAMPLER_MIPMAP_MODE_LINEAR,
+            VK_SAMPLER_ADDRESS_MODE_REPEAT, VK_SAMPLER_ADDRESS_MODE_REPEAT, VK_SAMPLER_ADDRESS_MODE_REPEAT,
+            0, 0
+    );
+
+    public static final SamplerKey LINEAR_CLAMP = new SamplerKey(
+            VK_FILTER_LINEAR, VK_FILTER_LINEAR, VK_SAMPLER_MIPMAP_MODE_LINEAR,
+            VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE, VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE, VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE,
+            0, 0
+    );
+
+    public boolean isAnisotropyEnabled() {
+        return maxAnisotropy > 1;
+    }
+}
@@ -0,0 +1,150 @@
+package ru.vext.engine.vulkan.swapchain;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.BufferType;
+import ru.vext.engine.vulkan.buffer.MemoryAllocation;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.vulkan.KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+@Getter
+public class RenderTarget {
+
+    private final VkApplication vkApplication;
+    private final int width, height;
+
+    private final long image, imageView;
+    private final MemoryAllocation allocation;
+
+    // Contents survive between frames, so only the damaged regions have to be redrawn before copying to the swap chain
+    private boolean initialized;
+
+    public RenderTarget(VkApplication vkApplication, int width, int height, int format) {
+        this.vkApplication = vkApplication;
+        this.width = width;
+        this.height = height;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageCreateInfo imageInfo = VkImageCreateInfo.calloc(stack);
+            imageInfo.sType(VK_STRUCTURE_TYPE_IMAGE_CREATE_INFO);
+            imageInfo.imageType(VK_IMAGE_TYPE_2D);
+            imageInfo.format(format);
+            imageInfo.extent(VkExtent3D.calloc(stack).width(width).height(height).depth(1));
+            imageInfo.mipLevels(1);
+            imageInfo.arrayLayers(1);
+            imageInfo.samples(VK_SAMPLE_COUNT_1_BIT);
+            imageInfo.tiling(VK_IMAGE_TILING_OPTIMAL);
+            imageInfo.usage(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT);
+            imageInfo.sharingMode(VK_SHARING_MODE_EXCLUSIVE);
+            imageInfo.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+
+            LongBuffer pImage = stack.mallocLong(1);
+            if (vkCreateImage(vkApplication.getDevice(), imageInfo, null, pImage) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create render target image");
+            }
+            image = pImage.get(0);
+            vkApplication.getHandleTracker().register(HandleType.IMAGE, image);
+            allocation = vkApplication.getMemoryAllocator().allocateForImage(image, BufferType.MEMORY_TYPE_GPU_LOCAL);
+
+            VkImageViewCreateInfo viewInfo = VkImageViewCreateInfo.calloc(stack);
+            viewInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
+            viewInfo.image(image);
+            viewInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
+            viewInfo.format(format);
+            viewInfo.subresourceRange(VkImageSubresourceRange.calloc(stack)
+                    .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                    .baseMipLevel(0)
+                    .levelCount(1)
+                    .baseArrayLayer(0)
+                    .layerCount(1));
+
+            LongBuffer pImageView = stack.mallocLong(1);
+            if (vkCreateImageView(vkApplication.getDevice(), viewInfo, null, pImageView) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create render target image view");
+            }
+            imageView = pImageView.get(0);
+            vkApplication.getHandleTracker().register(HandleType.IMAGE_VIEW, imageView);
+        }
+    }
+
+    public void recordInitialize(VkCommandBuffer commandBuffer) {
+        if (initialized) {
+            return;
+        }
+
+        // The render pass expects the layout it leaves the image in, which a fresh image does not have yet
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.calloc(1, stack);
+            barrier.sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER);
+            barrier.oldLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            barrier.newLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+            barrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.image(image);
+            barrier.subresourceRange(VkImageSubresourceRange.calloc(stack)
+                    .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                    .levelCount(1)
+                    .layerCount(1));
+            barrier.srcAccessMask(0);
+            barrier.dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT,
+                    0, null, null, barrier);
+        }
+
+        initialized = true;
+    }
+
+    public void recordCopyTo(VkCommandBuffer commandBuffer, long swapChainImage) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageSubresourceRange range = VkImageSubresourceRange.calloc(stack)
+                    .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                    .levelCount(1)
+                    .layerCount(1);
+
+            VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.calloc(1, stack);
+            barrier.sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER);
+            barrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+            barrier.image(swapChainImage);
+            barrier.subresourceRange(range);
+
+            // Acquired images hold nothing worth keeping, the whole target is copied over them
+            barrier.oldLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+            barrier.newLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
+            barrier.srcAccessMask(0);
+            barrier.dstAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT,
+                    0, null, null, barrier);
+
+            VkImageCopy.Buffer region = VkImageCopy.calloc(1, stack);
+            region.srcSubresource(VkImageSubresourceLayers.calloc(stack).aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).layerCount(1));
+            region.dstSubresource(VkImageSubresourceLayers.calloc(stack).aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).layerCount(1));
+            region.extent(VkExtent3D.calloc(stack).width(width).height(height).depth(1));
+            vkCmdCopyImage(commandBuffer, image, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                    swapChainImage, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, region);
+
+            barrier.oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL);
+            barrier.newLayout(VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+            barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT);
+            barrier.dstAccessMask(0);
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT,
+                    0, null, null, barrier);
+        }
+    }
+
+    public void cleanup() {
+        vkDestroyImageView(vkApplication.getDevice(), imageView, null);
+        vkApplication.getHandleTracker().unregister(HandleType.IMAGE_VIEW, imageView);
+
+        vkDestroyImage(vkApplication.getDevice(), image, null);
+        vkApplication.getHandleTracker().unregister(HandleType.IMAGE, image);
+        vkApplication.getMemoryAllocator().free(allocation);
+    }
+}
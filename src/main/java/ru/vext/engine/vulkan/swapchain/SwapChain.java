@@ -11,6 +11,8 @@ import ru.vext.engine.util.VextUtil;
 import ru.vext.engine.util.MemoryUtil;
 import ru.vext.engine.vulkan.QueueFamilyIndices;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
 import ru.vext.engine.vulkan.swapchain.pipeline.graphics.GraphicsPipeline;
 
 import java.nio.IntBuffer;
@@ -38,13 +40,16 @@ public class SwapChain {
 
     private long id;
     private List<Long> images;
-    private List<Long> imageViews;
     private int imageFormat;
     private VkExtent2D extent;
-    private List<Long> frameBuffers;
+    private RenderTarget renderTarget;
+    private long framebuffer;
     private List<VkCommandBuffer> commandBuffers;
 
     private long renderPass;
+    private int renderPassFormat;
+
+    private int generation;
 
     @Builder
     public SwapChain(VkApplication vkApplication, Map<String, GraphicsPipeline> graphicsPipelines) {
@@ -52,37 +57,70 @@ public class SwapChain {
         this.device = vkApplication.getDevice();
         this.graphicsPipelines = graphicsPipelines;
 
-        for (GraphicsPipeline pipeline : graphicsPipelines.values()) {
-            pipeline.setSwapChain(this);
+        for (Map.Entry<String, GraphicsPipeline> entry : graphicsPipelines.entrySet()) {
+            entry.getValue().setSwapChain(this);
+            entry.getValue().setName(entry.getKey());
         }
     }
 
     public void create() {
         createSwapChain();
-        createImageViews();
-        createRenderPass();
-        createGraphicsPipelines();
-        createFrameBuffers();
+        renderTarget = new RenderTarget(vkApplication, extent.width(), extent.height(), imageFormat);
+
+        // The render pass and the pipelines built against it only depend on the image format, so a resize keeps them
+        if (renderPass == VK_NULL_HANDLE || renderPassFormat != imageFormat) {
+            if (renderPass != VK_NULL_HANDLE) {
+                log.debug("Swap chain format changed from {} to {}, rebuilding pipelines", renderPassFormat, imageFormat);
+                cleanupPipelines();
+            }
+            createRenderPass();
+            createGraphicsPipelines();
+            renderPassFormat = imageFormat;
+        }
+
+        createFramebuffer();
         createCommandBuffers();
 
+        // Anything recorded against the previous render pass or pipelines must be re-recorded
+        generation++;
+
         Optional.ofNullable(vkApplication.getScene()).ifPresent(Scene::markDirty);
     }
 
+    public void recreate() {
+        cleanupSwapChain();
+        create();
+    }
+
     public void cleanup() {
-        frameBuffers.forEach(framebuffer -> vkDestroyFramebuffer(device, framebuffer, null));
+        cleanupSwapChain();
+        cleanupPipelines();
+    }
+
+    private void cleanupSwapChain() {
+        HandleTracker handleTracker = vkApplication.getHandleTracker();
+
+        vkDestroyFramebuffer(device, framebuffer, null);
+        handleTracker.unregister(HandleType.FRAMEBUFFER, framebuffer);
 
         try (MemoryStack stack = stackPush()) {
             vkFreeCommandBuffers(device, vkApplication.getCommandPool(), MemoryUtil.asPointerBuffer(stack, commandBuffers));
         }
+        commandBuffers.forEach(commandBuffer -> handleTracker.unregister(HandleType.COMMAND_BUFFER, commandBuffer.address()));
+
+        renderTarget.cleanup();
+
+        vkDestroySwapchainKHR(device, id, null);
+        handleTracker.unregister(HandleType.SWAPCHAIN, id);
+    }
 
+    private void cleanupPipelines() {
         for (GraphicsPipeline pipeline : graphicsPipelines.values()) {
             pipeline.cleanup();
         }
         vkDestroyRenderPass(device, renderPass, null);
-
-        imageViews.forEach(imageView -> vkDestroyImageView(device, imageView, null));
-
-        vkDestroySwapchainKHR(device, id, null);
+        vkApplication.getHandleTracker().unregister(HandleType.RENDER_PASS, renderPass);
+        renderPass = VK_NULL_HANDLE;
     }
 
     private void createSwapChain() {
@@ -110,7 +148,11 @@ public class SwapChain {
             createInfo.imageColorSpace(surfaceFormat.colorSpace());
             createInfo.imageExtent(extent);
             createInfo.imageArrayLayers(1);
-            createInfo.imageUsage(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT);
+            // Frames are rendered into the retained target and copied over, never rendered into the swap chain directly
+            if ((capabilities.supportedUsageFlags() & VK_IMAGE_USAGE_TRANSFER_DST_BIT) == 0) {
+                throw new RuntimeException("Failed to create swap chain: surface does not support transfer destination images");
+            }
+            createInfo.imageUsage(VK_IMAGE_USAGE_TRANSFER_DST_BIT);
 
             QueueFamilyIndices indices = vkApplication.findQueueFamilies(vkApplication.getPhysicalDevice());
 
@@ -135,6 +177,7 @@ public class SwapChain {
             }
 
             id = pSwapChain.get(0);
+            vkApplication.getHandleTracker().register(HandleType.SWAPCHAIN, id);
 
             LongBuffer pSwapchainImages = stack.mallocLong(imageCount.get(0));
 
@@ -182,54 +225,18 @@ public class SwapChain {
         return actualExtent;
     }
 
-    private void createImageViews() {
-        imageViews = new ArrayList<>(images.size());
-
-        try (MemoryStack stack = stackPush()) {
-
-            LongBuffer pImageView = stack.mallocLong(1);
-
-            for (long swapChainImage : images) {
-
-                VkImageViewCreateInfo createInfo = VkImageViewCreateInfo.calloc(stack);
-
-                createInfo.sType(VK_STRUCTURE_TYPE_IMAGE_VIEW_CREATE_INFO);
-                createInfo.image(swapChainImage);
-                createInfo.viewType(VK_IMAGE_VIEW_TYPE_2D);
-                createInfo.format(imageFormat);
-
-                createInfo.components().r(VK_COMPONENT_SWIZZLE_IDENTITY);
-                createInfo.components().g(VK_COMPONENT_SWIZZLE_IDENTITY);
-                createInfo.components().b(VK_COMPONENT_SWIZZLE_IDENTITY);
-                createInfo.components().a(VK_COMPONENT_SWIZZLE_IDENTITY);
-
-                createInfo.subresourceRange().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT);
-                createInfo.subresourceRange().baseMipLevel(0);
-                createInfo.subresourceRange().levelCount(1);
-                createInfo.subresourceRange().baseArrayLayer(0);
-                createInfo.subresourceRange().layerCount(1);
-
-                if (vkCreateImageView(device, createInfo, null, pImageView) != VK_SUCCESS) {
-                    throw new RuntimeException("Failed to create image views");
-                }
-
-                imageViews.add(pImageView.get(0));
-            }
-
-        }
-    }
-
     private void createRenderPass() {
         try (MemoryStack stack = stackPush()) {
             VkAttachmentDescription.Buffer attachmentDescription = VkAttachmentDescription.calloc(1, stack);
             attachmentDescription.format(imageFormat);
             attachmentDescription.samples(VK_SAMPLE_COUNT_1_BIT);
-            attachmentDescription.loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR);
+            // Undamaged pixels are kept from the previous frame; damaged ones are cleared with vkCmdClearAttachments
+            attachmentDescription.loadOp(VK_ATTACHMENT_LOAD_OP_LOAD);
             attachmentDescription.storeOp(VK_ATTACHMENT_STORE_OP_STORE);
             attachmentDescription.stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE);
             attachmentDescription.stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE);
-            attachmentDescription.initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
-            attachmentDescription.finalLayout(VK_IMAGE_LAYOUT_PRESENT_SRC_KHR);
+            attachmentDescription.initialLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+            attachmentDescription.finalLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
 
             VkAttachmentReference.Buffer attachmentReference = VkAttachmentReference.calloc(1, stack);
             attachmentReference.attachment(0);
@@ -240,10 +247,31 @@ public class SwapChain {
             subpassDescription.colorAttachmentCount(1);
             subpassDescription.pColorAttachments(attachmentReference);
 
+            VkSubpassDependency.Buffer dependencies = VkSubpassDependency.calloc(2, stack);
+
+            // The previous frame's draws and copy out of the target must finish before this frame loads it
+            dependencies.get(0)
+                    .srcSubpass(VK_SUBPASS_EXTERNAL)
+                    .dstSubpass(0)
+                    .srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | VK_PIPELINE_STAGE_TRANSFER_BIT)
+                    .srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT)
+                    .dstStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT)
+                    .dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_READ_BIT | VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT);
+
+            // The copy to the swap chain image reads what this subpass wrote
+            dependencies.get(1)
+                    .srcSubpass(0)
+                    .dstSubpass(VK_SUBPASS_EXTERNAL)
+                    .srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT)
+                    .srcAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT)
+                    .dstStageMask(VK_PIPELINE_STAGE_TRANSFER_BIT)
+                    .dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT);
+
             VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.calloc(stack);
             renderPassInfo.sType(VK_STRUCTURE_TYPE_RENDER_PASS_CREATE_INFO);
             renderPassInfo.pAttachments(attachmentDescription);
             renderPassInfo.pSubpasses(subpassDescription);
+            renderPassInfo.pDependencies(dependencies);
 
             LongBuffer pRenderPass = stack.mallocLong(1);
 
@@ -251,6 +279,7 @@ public class SwapChain {
                 throw new RuntimeException("Failed to create render pass");
 
             renderPass = pRenderPass.get(0);
+            vkApplication.getHandleTracker().register(HandleType.RENDER_PASS, renderPass);
         }
     }
 
@@ -260,31 +289,28 @@ public class SwapChain {
         }
     }
 
-    private void createFrameBuffers() {
-        frameBuffers = new ArrayList<>();
-
+    private void createFramebuffer() {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            for (long attachments : imageViews) {
-                VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
-                framebufferInfo.sType(VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
-                framebufferInfo.renderPass(renderPass);
-                framebufferInfo.attachmentCount(1);
-                framebufferInfo.pAttachments(stack.longs(attachments));
-                framebufferInfo.width(extent.width());
-                framebufferInfo.height(extent.height());
-                framebufferInfo.layers(1);
-
-                LongBuffer pFrameBuffer = stack.mallocLong(1);
-                if (vkCreateFramebuffer(device, framebufferInfo, null, pFrameBuffer) != VK_SUCCESS)
-                    throw new RuntimeException("Failed to create framebuffer");
-
-                frameBuffers.add(pFrameBuffer.get(0));
-            }
+            VkFramebufferCreateInfo framebufferInfo = VkFramebufferCreateInfo.calloc(stack);
+            framebufferInfo.sType(VK_STRUCTURE_TYPE_FRAMEBUFFER_CREATE_INFO);
+            framebufferInfo.renderPass(renderPass);
+            framebufferInfo.attachmentCount(1);
+            framebufferInfo.pAttachments(stack.longs(renderTarget.getImageView()));
+            framebufferInfo.width(extent.width());
+            framebufferInfo.height(extent.height());
+            framebufferInfo.layers(1);
+
+            LongBuffer pFrameBuffer = stack.mallocLong(1);
+            if (vkCreateFramebuffer(device, framebufferInfo, null, pFrameBuffer) != VK_SUCCESS)
+                throw new RuntimeException("Failed to create framebuffer");
+
+            framebuffer = pFrameBuffer.get(0);
+            vkApplication.getHandleTracker().register(HandleType.FRAMEBUFFER, framebuffer);
         }
     }
 
     private void createCommandBuffers() {
-        final int commandBuffersCount = frameBuffers.size();
+        final int commandBuffersCount = images.size();
         commandBuffers = new ArrayList<>();
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -299,8 +325,10 @@ public class SwapChain {
             if (vkAllocateCommandBuffers(device, commandBufferAllocate, pCommandBuffers) != VK_SUCCESS)
                 throw new RuntimeException("Failed to allocate command buffers");
 
-            for (int i = 0; i < commandBuffersCount; i++)
+            for (int i = 0; i < commandBuffersCount; i++) {
                 commandBuffers.add(new VkCommandBuffer(pCommandBuffers.get(i), device));
+                vkApplication.getHandleTracker().register(HandleType.COMMAND_BUFFER, pCommandBuffers.get(i));
+            }
         }
     }
 
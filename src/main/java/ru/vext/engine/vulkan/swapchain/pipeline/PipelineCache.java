@@ -0,0 +1,162 @@
+package ru.vext.engine.vulkan.swapchain.pipeline;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.vulkan.VkDevice;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class PipelineCache {
+
+    public static final String PATH_PROPERTY = "vext.pipelineCache";
+
+    // VkPipelineCacheHeaderVersionOne: header size, header version, vendor id, device id, pipeline cache uuid
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + VK_UUID_SIZE;
+
+    private final VkDevice device;
+    private final HandleTracker handleTracker;
+    private final Path path;
+
+    private final int vendorId, deviceId;
+    private final byte[] cacheUuid = new byte[VK_UUID_SIZE];
+
+    @Getter
+    private long id;
+
+    public PipelineCache(VkApplication vkApplication) {
+        this.device = vkApplication.getDevice();
+        this.handleTracker = vkApplication.getHandleTracker();
+        this.path = Path.of(System.getProperty(PATH_PROPERTY,
+                Path.of(System.getProperty("user.home"), ".vext", "pipeline.cache").toString()));
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(vkApplication.getPhysicalDevice(), properties);
+
+            vendorId = properties.vendorID();
+            deviceId = properties.deviceID();
+            properties.pipelineCacheUUID().get(cacheUuid);
+        }
+    }
+
+    public void create() {
+        ByteBuffer initialData = load();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPipelineCacheCreateInfo cacheInfo = VkPipelineCacheCreateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_PIPELINE_CACHE_CREATE_INFO)
+                    .pInitialData(initialData);
+
+            LongBuffer pPipelineCache = stack.mallocLong(1);
+            if (vkCreatePipelineCache(device, cacheInfo, null, pPipelineCache) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create pipeline cache");
+            }
+
+            id = pPipelineCache.get(0);
+            handleTracker.register(HandleType.PIPELINE_CACHE, id);
+        } finally {
+            if (initialData != null) {
+                MemoryUtil.memFree(initialData);
+            }
+        }
+    }
+
+    private ByteBuffer load() {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            log.warn("Failed to read pipeline cache {}: {}", path, e.getMessage());
+            return null;
+        }
+
+        // A cache written by another GPU or driver is rejected here instead of relying on every driver to ignore it
+        if (!isCompatible(bytes)) {
+            log.info("Discarding pipeline cache {} written by a different device or driver", path);
+            return null;
+        }
+
+        log.debug("Loaded pipeline cache {} ({} bytes)", path, bytes.length);
+        return MemoryUtil.memAlloc(bytes.length).put(bytes).flip();
+    }
+
+    private boolean isCompatible(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE) {
+            return false;
+        }
+
+        ByteBuffer header = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() < HEADER_SIZE
+                || header.getInt() != VK_PIPELINE_CACHE_HEADER_VERSION_ONE
+                || header.getInt() != vendorId
+                || header.getInt() != deviceId) {
+            return false;
+        }
+
+        for (byte b : cacheUuid) {
+            if (header.get() != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void save() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pDataSize = stack.mallocPointer(1);
+            if (vkGetPipelineCacheData(device, id, pDataSize, null) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to get pipeline cache size");
+            }
+
+            ByteBuffer data = MemoryUtil.memAlloc((int) pDataSize.get(0));
+            try {
+                if (vkGetPipelineCacheData(device, id, pDataSize, data) != VK_SUCCESS) {
+                    throw new RuntimeException("Failed to get pipeline cache data");
+                }
+
+                byte[] bytes = new byte[(int) pDataSize.get(0)];
+                data.get(bytes);
+
+                // Written next to the target and moved over it, so an interrupted save never leaves a truncated cache
+                Files.createDirectories(path.toAbsolutePath().getParent());
+                Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.write(temp, bytes);
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                log.debug("Saved pipeline cache {} ({} bytes)", path, bytes.length);
+            } catch (IOException e) {
+                log.warn("Failed to write pipeline cache {}: {}", path, e.getMessage());
+            } finally {
+                MemoryUtil.memFree(data);
+            }
+        }
+    }
+
+    public void cleanup() {
+        save();
+
+        vkDestroyPipelineCache(device, id, null);
+        handleTracker.unregister(HandleType.PIPELINE_CACHE, id);
+    }
+}
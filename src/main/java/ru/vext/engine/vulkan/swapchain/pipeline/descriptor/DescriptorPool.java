@@ -5,6 +5,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
 import ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout.AbstractDescriptorBinding;
 import ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout.DescriptorSetLayout;
 
@@ -23,9 +24,11 @@ public class DescriptorPool {
     private final long descriptorPool;
     private final long descriptorSetLayout;
     private final long[] descriptorSets;
+    private final int dynamicBindingCount;
 
     public DescriptorPool(VkApplication vkApplication, DescriptorSetLayout descriptorSetLayout, int frames) {
         this.vkApplication = vkApplication;
+        this.dynamicBindingCount = descriptorSetLayout.getDynamicBindingCount();
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
             descriptorPool = createDescriptorPool(descriptorSetLayout, frames, stack);
@@ -57,6 +60,7 @@ public class DescriptorPool {
         if (vkCreateDescriptorPool(vkApplication.getDevice(), poolInfo, null, pDescriptorPool) != VK_SUCCESS) {
             throw new RuntimeException("Failed to create descriptor pool!");
         }
+        vkApplication.getHandleTracker().register(HandleType.DESCRIPTOR_POOL, pDescriptorPool.get(0));
         return pDescriptorPool.get(0);
     }
 
@@ -69,7 +73,7 @@ public class DescriptorPool {
             AbstractDescriptorBinding binding = bindings[i];
             bindingLayout.binding(binding.getBinding());
             bindingLayout.descriptorType(binding.getType());
-            bindingLayout.descriptorCount(1);
+            bindingLayout.descriptorCount(binding.getDescriptorCount());
             bindingLayout.stageFlags(binding.getFlags());
         }
 
@@ -83,6 +87,7 @@ public class DescriptorPool {
             throw new RuntimeException("Failed to create descriptor set layout!");
         }
 
+        vkApplication.getHandleTracker().register(HandleType.DESCRIPTOR_SET_LAYOUT, pDescriptorSetLayout.get(0));
         return pDescriptorSetLayout.get(0);
     }
 
@@ -113,7 +118,8 @@ public class DescriptorPool {
     private void setupDescriptorSets(DescriptorSetLayout descriptorSetLayout, MemoryStack stack) {
         AbstractDescriptorBinding[] bindings = descriptorSetLayout.getBindings();
 
-        for(long descriptorSet : descriptorSets) {
+        for (int frameIndex = 0; frameIndex < descriptorSets.length; frameIndex++) {
+            long descriptorSet = descriptorSets[frameIndex];
             VkWriteDescriptorSet.Buffer descriptorWriteBuffer = VkWriteDescriptorSet.calloc(bindings.length, stack);
 
             for (int i = 0; i < bindings.length; i++) {
@@ -124,10 +130,10 @@ public class DescriptorPool {
                 descriptorWrite.dstSet(descriptorSet);
                 descriptorWrite.dstBinding(binding.getBinding());
                 descriptorWrite.dstArrayElement(0);
-                descriptorWrite.descriptorCount(1);
+                descriptorWrite.descriptorCount(binding.getDescriptorCount());
                 descriptorWrite.descriptorType(binding.getType());
 
-                binding.fillBindingInfo(vkApplication, descriptorWrite, stack);
+                binding.fillBindingInfo(vkApplication, frameIndex, descriptorWrite, stack);
             }
 
             vkUpdateDescriptorSets(vkApplication.getDevice(), descriptorWriteBuffer, null);
@@ -137,5 +143,7 @@ public class DescriptorPool {
     public void cleanup() {
         vkDestroyDescriptorPool(vkApplication.getDevice(), descriptorPool, null);
         vkDestroyDescriptorSetLayout(vkApplication.getDevice(), descriptorSetLayout, null);
+        vkApplication.getHandleTracker().unregister(HandleType.DESCRIPTOR_POOL, descriptorPool);
+        vkApplication.getHandleTracker().unregister(HandleType.DESCRIPTOR_SET_LAYOUT, descriptorSetLayout);
     }
 }
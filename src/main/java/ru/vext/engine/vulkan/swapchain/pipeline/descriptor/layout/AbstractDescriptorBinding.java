@@ -14,5 +14,9 @@ public abstract class AbstractDescriptorBinding {
     private int flags;
     private int binding;
 
-    public abstract void fillBindingInfo(VkApplication vkApplication, VkWriteDescriptorSet descriptorWrite, MemoryStack stack);
+    public int getDescriptorCount() {
+        return 1;
+    }
+
+    public abstract void fillBindingInfo(VkApplication vkApplication, int frameIndex, VkWriteDescriptorSet descriptorWrite, MemoryStack stack);
 }
@@ -6,12 +6,17 @@ import lombok.Setter;
 import ru.vext.engine.vulkan.buffer.ImageView;
 import ru.vext.engine.vulkan.buffer.MemoryBuffer;
 import ru.vext.engine.vulkan.buffer.UniformBuffer;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.sampler.SamplerKey;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.lwjgl.vulkan.VK10.VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC;
+import static org.lwjgl.vulkan.VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC;
+
 @Getter
 @AllArgsConstructor
 public class DescriptorSetLayout {
@@ -26,11 +31,21 @@ public class DescriptorSetLayout {
         Map<Integer, Integer> counts = new HashMap<>();
         for (AbstractDescriptorBinding binding : bindings) {
             int count = counts.getOrDefault(binding.getType(), 0);
-            counts.put(binding.getType(), count + 1);
+            counts.put(binding.getType(), count + binding.getDescriptorCount());
         }
         return counts;
     }
 
+    public int getDynamicBindingCount() {
+        int count = 0;
+        for (AbstractDescriptorBinding binding : bindings) {
+            if (binding.getType() == VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC || binding.getType() == VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Setter
     public static class Builder {
 
@@ -52,11 +67,31 @@ public class DescriptorSetLayout {
             return this;
         }
 
+        public Builder addImageBinding(ImageView imageView, SamplerKey samplerKey, int flags) {
+            bindings.add(new ImageBinding(imageView, samplerKey, flags, bindings.size()));
+            return this;
+        }
+
+        public Builder addImageArrayBinding(List<ImageView> imageViews, int count, int flags) {
+            bindings.add(new ImageArrayBinding(imageViews, count, SamplerKey.LINEAR_REPEAT, flags, bindings.size()));
+            return this;
+        }
+
         public Builder addUniformBufferBinding(UniformBuffer buffer, int flags) {
             bindings.add(new UniformBinding(buffer, flags, bindings.size()));
             return this;
         }
 
+        public Builder addRingUniformBinding(List<UniformRing> rings, long offset, long range, int flags) {
+            bindings.add(new RingUniformBinding(rings, offset, range, flags, bindings.size()));
+            return this;
+        }
+
+        public Builder addRingStorageBinding(List<UniformRing> rings, long offset, long range, int flags) {
+            bindings.add(new RingStorageBinding(rings, offset, range, flags, bindings.size()));
+            return this;
+        }
+
         public DescriptorSetLayout build() {
             return new DescriptorSetLayout(bindings.toArray(AbstractDescriptorBinding[]::new));
         }
@@ -0,0 +1,52 @@
+package ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorImageInfo;
+import org.lwjgl.vulkan.VkWriteDescriptorSet;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.ImageView;
+import ru.vext.engine.vulkan.sampler.SamplerKey;
+
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Getter
+public class ImageArrayBinding extends AbstractDescriptorBinding {
+
+    private final List<ImageView> imageViews;
+    private final int count;
+    private final SamplerKey samplerKey;
+
+    public ImageArrayBinding(List<ImageView> imageViews, int count, SamplerKey samplerKey, int flags, int binding) {
+        super(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, flags, binding);
+        if (imageViews.isEmpty() || imageViews.size() > count) {
+            throw new RuntimeException("Failed to create image array binding: " + imageViews.size() + " images for " + count + " slots");
+        }
+        this.imageViews = imageViews;
+        this.count = count;
+        this.samplerKey = samplerKey;
+    }
+
+    @Override
+    public int getDescriptorCount() {
+        return count;
+    }
+
+    @Override
+    public void fillBindingInfo(VkApplication vkApplication, int frameIndex, VkWriteDescriptorSet descriptorWrite, MemoryStack stack) {
+        long sampler = vkApplication.getSamplerCache().get(samplerKey);
+
+        // Without partially bound descriptors every slot must stay valid, so unused slots repeat the first image
+        VkDescriptorImageInfo.Buffer imageInfo = VkDescriptorImageInfo.calloc(count, stack);
+        for (int i = 0; i < count; i++) {
+            ImageView imageView = imageViews.get(i < imageViews.size() ? i : 0);
+            imageInfo.get(i)
+                    .imageLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL)
+                    .imageView(imageView.getImageView())
+                    .sampler(sampler);
+        }
+        descriptorWrite.pImageInfo(imageInfo);
+    }
+}
@@ -0,0 +1,36 @@
+package ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorBufferInfo;
+import org.lwjgl.vulkan.VkWriteDescriptorSet;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER;
+
+@Getter
+public class RingUniformBinding extends AbstractDescriptorBinding {
+
+    private final List<UniformRing> rings;
+    private final long offset;
+    private final long range;
+
+    public RingUniformBinding(List<UniformRing> rings, long offset, long range, int flags, int binding) {
+        super(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER, flags, binding);
+        this.rings = rings;
+        this.offset = offset;
+        this.range = range;
+    }
+
+    @Override
+    public void fillBindingInfo(VkApplication vkApplication, int frameIndex, VkWriteDescriptorSet descriptorWrite, MemoryStack stack) {
+        VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.calloc(1, stack);
+        bufferInfo.buffer(rings.get(frameIndex).getBuffer().getId());
+        bufferInfo.offset(offset);
+        bufferInfo.range(range);
+        descriptorWrite.pBufferInfo(bufferInfo);
+    }
+}
@@ -20,7 +20,7 @@ public class UniformBinding extends AbstractDescriptorBinding {
     }
 
     @Override
-    public void fillBindingInfo(VkApplication vkApplication, VkWriteDescriptorSet descriptorWrite, MemoryStack stack) {
+    public void fillBindingInfo(VkApplication vkApplication, int frameIndex, VkWriteDescriptorSet descriptorWrite, MemoryStack stack) {
         VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.calloc(1, stack);
         bufferInfo.buffer(buffer.getId());
         bufferInfo.offset(0);
@@ -4,6 +4,9 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
 import org.lwjgl.vulkan.VkVertexInputBindingDescription;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.DefaultBuffers;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.render.PanelBatch;
 import ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout.DescriptorSetLayout;
 
 import static org.lwjgl.vulkan.VK10.*;
@@ -14,26 +17,41 @@ public class DefaultGraphicsPipeline extends GraphicsPipeline {
         super(vkApplication, topology, shaderPaths);
     }
 
+    // Nine-slice panels draw their three rows as one indexed strip split by restart indices
+    @Override
+    protected boolean isPrimitiveRestartEnabled() {
+        return topology == VK_PRIMITIVE_TOPOLOGY_TRIANGLE_STRIP;
+    }
+
     @Override
     protected VkVertexInputBindingDescription.Buffer createInputBindings(MemoryStack stack) {
-        VkVertexInputBindingDescription.Buffer inputBindings = VkVertexInputBindingDescription.calloc(1, stack);
+        VkVertexInputBindingDescription.Buffer inputBindings = VkVertexInputBindingDescription.calloc(2, stack);
 
-        configureInputBinding(inputBindings.get(0), 0, Float.BYTES * 2, VK_VERTEX_INPUT_RATE_VERTEX);
+        configureInputBinding(inputBindings.get(0), 0, DefaultBuffers.VERTEX_STRIDE, VK_VERTEX_INPUT_RATE_VERTEX);
+        configureInputBinding(inputBindings.get(1), 1, PanelBatch.INSTANCE_STRIDE, VK_VERTEX_INPUT_RATE_INSTANCE);
 
         return inputBindings;
     }
 
     @Override
     protected VkVertexInputAttributeDescription.Buffer createInputAttribute(MemoryStack stack) {
-        VkVertexInputAttributeDescription.Buffer inputAttributeDescriptions = VkVertexInputAttributeDescription.calloc(1, stack);
+        VkVertexInputAttributeDescription.Buffer inputAttributeDescriptions = VkVertexInputAttributeDescription.calloc(8, stack);
+
+        configureInputAttribute(inputAttributeDescriptions.get(0), 0, 0, VK_FORMAT_R32G32B32A32_SFLOAT, 0);
 
-        configureInputAttribute(inputAttributeDescriptions.get(0), 0, 0, VK_FORMAT_R32G32_SFLOAT, 0);
+        // Instance attributes: four matrix columns, then color, size/border and clip rectangle
+        for (int location = 1; location < 8; location++) {
+            configureInputAttribute(inputAttributeDescriptions.get(location), 1, location, VK_FORMAT_R32G32B32A32_SFLOAT, (location - 1) * 4 * Float.BYTES);
+        }
 
         return inputAttributeDescriptions;
     }
 
     @Override
     protected DescriptorSetLayout createSetLayout() {
-        return null;
+        return DescriptorSetLayout.builder()
+                .addRingUniformBinding(vkApplication.getUniformRings(), UniformRing.FRAME_GLOBALS_OFFSET, UniformRing.FRAME_GLOBALS_SIZE, VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT)
+                .addRingStorageBinding(vkApplication.getUniformRings(), UniformRing.TRANSFORMS_OFFSET, UniformRing.TRANSFORMS_SIZE, VK_SHADER_STAGE_VERTEX_BIT)
+                .build();
     }
 }
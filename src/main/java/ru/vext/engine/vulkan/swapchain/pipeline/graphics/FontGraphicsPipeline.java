@@ -5,7 +5,9 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
 import org.lwjgl.vulkan.VkVertexInputBindingDescription;
 import ru.vext.engine.vulkan.VkApplication;
-import ru.vext.engine.resource.font.BakedFont;
+import ru.vext.engine.vulkan.buffer.UniformRing;
+import ru.vext.engine.vulkan.render.GlyphBatch;
+import ru.vext.engine.vulkan.render.displaylist.FontTable;
 import ru.vext.engine.vulkan.swapchain.pipeline.descriptor.layout.DescriptorSetLayout;
 
 import static org.lwjgl.vulkan.VK10.*;
@@ -13,29 +15,34 @@ import static org.lwjgl.vulkan.VK10.*;
 @Getter
 public class FontGraphicsPipeline extends GraphicsPipeline {
 
-    private final BakedFont bakedFont;
+    private final FontTable fontTable;
 
-    public FontGraphicsPipeline(VkApplication vkApplication, BakedFont font, String... shaderPaths) {
+    public FontGraphicsPipeline(VkApplication vkApplication, FontTable fontTable, String... shaderPaths) {
         super(vkApplication, VK_PRIMITIVE_TOPOLOGY_TRIANGLE_STRIP, shaderPaths);
-        this.bakedFont = font;
+        this.fontTable = fontTable;
     }
 
     @Override
     protected VkVertexInputBindingDescription.Buffer createInputBindings(MemoryStack stack) {
-        VkVertexInputBindingDescription.Buffer inputBindings = VkVertexInputBindingDescription.calloc(2, stack);
+        VkVertexInputBindingDescription.Buffer inputBindings = VkVertexInputBindingDescription.calloc(1, stack);
 
-        configureInputBinding(inputBindings.get(0), 0, Float.BYTES, VK_VERTEX_INPUT_RATE_INSTANCE);
-        configureInputBinding(inputBindings.get(1), 1, Float.BYTES, VK_VERTEX_INPUT_RATE_INSTANCE);
+        configureInputBinding(inputBindings.get(0), 0, GlyphBatch.INSTANCE_STRIDE, VK_VERTEX_INPUT_RATE_INSTANCE);
 
         return inputBindings;
     }
 
     @Override
     protected VkVertexInputAttributeDescription.Buffer createInputAttribute(MemoryStack stack) {
-        VkVertexInputAttributeDescription.Buffer inputAttributeDescriptions = VkVertexInputAttributeDescription.calloc(2, stack);
+        VkVertexInputAttributeDescription.Buffer inputAttributeDescriptions = VkVertexInputAttributeDescription.calloc(9, stack);
 
-        configureInputAttribute(inputAttributeDescriptions.get(0), 0, 0, VK_FORMAT_R32_SINT, 0);
-        configureInputAttribute(inputAttributeDescriptions.get(1), 1, 1, VK_FORMAT_R32_SFLOAT, 0);
+        // Instance attributes: four matrix columns, color, offsetX, glyph index, clip rectangle and font index
+        for (int location = 0; location < 5; location++) {
+            configureInputAttribute(inputAttributeDescriptions.get(location), 0, location, VK_FORMAT_R32G32B32A32_SFLOAT, location * 4 * Float.BYTES);
+        }
+        configureInputAttribute(inputAttributeDescriptions.get(5), 0, 5, VK_FORMAT_R32_SFLOAT, 20 * Float.BYTES);
+        configureInputAttribute(inputAttributeDescriptions.get(6), 0, 6, VK_FORMAT_R32_SINT, 21 * Float.BYTES);
+        configureInputAttribute(inputAttributeDescriptions.get(7), 0, 7, VK_FORMAT_R32G32B32A32_SFLOAT, 24 * Float.BYTES);
+        configureInputAttribute(inputAttributeDescriptions.get(8), 0, 8, VK_FORMAT_R32_SINT, 22 * Float.BYTES);
 
         return inputAttributeDescriptions;
     }
@@ -43,8 +50,10 @@ public class FontGraphicsPipeline extends GraphicsPipeline {
     @Override
     protected DescriptorSetLayout createSetLayout() {
         return DescriptorSetLayout.builder()
-                .addImageBinding(bakedFont.getImageView(), VK_SHADER_STAGE_FRAGMENT_BIT)
-                .addGpuBufferBinding(bakedFont.getDataBuffer(), VK_SHADER_STAGE_FRAGMENT_BIT | VK_SHADER_STAGE_VERTEX_BIT)
+                .addRingUniformBinding(vkApplication.getUniformRings(), UniformRing.FRAME_GLOBALS_OFFSET, UniformRing.FRAME_GLOBALS_SIZE, VK_SHADER_STAGE_VERTEX_BIT | VK_SHADER_STAGE_FRAGMENT_BIT)
+                .addImageArrayBinding(fontTable.getAtlases(), FontTable.MAX_FONTS, VK_SHADER_STAGE_FRAGMENT_BIT)
+                .addGpuBufferBinding(fontTable.getGlyphBuffer(), VK_SHADER_STAGE_FRAGMENT_BIT | VK_SHADER_STAGE_VERTEX_BIT)
+                .addRingStorageBinding(vkApplication.getUniformRings(), UniformRing.TRANSFORMS_OFFSET, UniformRing.TRANSFORMS_SIZE, VK_SHADER_STAGE_VERTEX_BIT)
                 .build();
     }
 }
@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleType;
 import ru.vext.engine.vulkan.shader.ShaderInfo;
 import ru.vext.engine.vulkan.shader.ShaderLoader;
 import ru.vext.engine.vulkan.swapchain.SwapChain;
@@ -31,12 +32,21 @@ public abstract class GraphicsPipeline {
     @Setter
     protected SwapChain swapChain;
 
+    // Key the pipeline is registered under, used to label profiler scopes
+    protected String name;
+    // Built once, so timing a draw batch never concatenates strings per frame
+    protected String scopeName;
+
     protected long pipelineLayout;
     protected long id;
 
     @Getter
     protected DescriptorPool descriptorPool;
 
+    // Built once in create(), so binding never allocates
+    private int[] zeroDynamicOffsets;
+    private long[][] frameDescriptorSets;
+
     public GraphicsPipeline(VkApplication vkApplication, int topology, String... shaderPaths) {
         this.vkApplication = vkApplication;
         this.device = vkApplication.getDevice();
@@ -44,16 +54,32 @@ public abstract class GraphicsPipeline {
         this.shaderPaths = shaderPaths;
     }
 
+    public void setName(String name) {
+        this.name = name;
+        this.scopeName = "draw:" + name;
+    }
+
     protected abstract VkVertexInputBindingDescription.Buffer createInputBindings(MemoryStack stack);
 
     protected abstract VkVertexInputAttributeDescription.Buffer createInputAttribute(MemoryStack stack);
 
     protected abstract DescriptorSetLayout createSetLayout();
 
+    // Only pipelines that draw indexed strips separated by restart indices should turn this on
+    protected boolean isPrimitiveRestartEnabled() {
+        return false;
+    }
+
     public void create() {
         DescriptorSetLayout descriptorSetLayout = createSetLayout();
         if (descriptorSetLayout != null) {
             descriptorPool = new DescriptorPool(vkApplication, descriptorSetLayout, VkApplication.MAX_FRAMES_IN_FLIGHT);
+
+            zeroDynamicOffsets = new int[descriptorPool.getDynamicBindingCount()];
+            frameDescriptorSets = new long[VkApplication.MAX_FRAMES_IN_FLIGHT][];
+            for (int i = 0; i < frameDescriptorSets.length; i++) {
+                frameDescriptorSets[i] = new long[]{descriptorPool.getDescriptorSets()[i]};
+            }
         }
 
         try (MemoryStack stack = stackPush()) {
@@ -71,19 +97,7 @@ public abstract class GraphicsPipeline {
             VkPipelineInputAssemblyStateCreateInfo inputAssembly = VkPipelineInputAssemblyStateCreateInfo.calloc(stack);
             inputAssembly.sType(VK_STRUCTURE_TYPE_PIPELINE_INPUT_ASSEMBLY_STATE_CREATE_INFO);
             inputAssembly.topology(topology);
-            inputAssembly.primitiveRestartEnable(false);
-
-            VkViewport viewport = VkViewport.malloc(stack);
-            viewport.x(0);
-            viewport.y(0);
-            viewport.width(swapChain.getExtent().width());
-            viewport.height(swapChain.getExtent().height());
-            viewport.minDepth(0);
-            viewport.maxDepth(1);
-
-            VkRect2D scissor = VkRect2D.malloc(stack);
-            scissor.offset(VkOffset2D.malloc(stack).set(0, 0));
-            scissor.extent(swapChain.getExtent());
+            inputAssembly.primitiveRestartEnable(isPrimitiveRestartEnabled());
 
             IntBuffer dynamicStates = stack.ints(new int[]{VK_DYNAMIC_STATE_VIEWPORT, VK_DYNAMIC_STATE_SCISSOR});
 
@@ -93,6 +107,7 @@ public abstract class GraphicsPipeline {
 
             VkPipelineViewportStateCreateInfo viewportState = VkPipelineViewportStateCreateInfo.calloc(stack);
             viewportState.sType(VK_STRUCTURE_TYPE_PIPELINE_VIEWPORT_STATE_CREATE_INFO);
+            // Viewport and scissor are always set per command buffer, so the pipeline does not depend on the swap chain extent
             viewportState.viewportCount(1);
             viewportState.scissorCount(1);
 
@@ -155,6 +170,7 @@ public abstract class GraphicsPipeline {
             }
 
             pipelineLayout = pPipelineLayout.get(0);
+            vkApplication.getHandleTracker().register(HandleType.PIPELINE_LAYOUT, pipelineLayout);
 
             VkGraphicsPipelineCreateInfo.Buffer pipelineInfo = VkGraphicsPipelineCreateInfo.calloc(1, stack);
             pipelineInfo.sType(VK_STRUCTURE_TYPE_GRAPHICS_PIPELINE_CREATE_INFO);
@@ -174,11 +190,12 @@ public abstract class GraphicsPipeline {
             pipelineInfo.subpass(0);
 
             LongBuffer pGraphicsPipeline = stack.mallocLong(1);
-            if (vkCreateGraphicsPipelines(device, VK_NULL_HANDLE, pipelineInfo, null, pGraphicsPipeline) != VK_SUCCESS) {
+            if (vkCreateGraphicsPipelines(device, vkApplication.getPipelineCache().getId(), pipelineInfo, null, pGraphicsPipeline) != VK_SUCCESS) {
                 throw new RuntimeException("Failed to create graphics pipeline");
             }
 
             id = pGraphicsPipeline.get(0);
+            vkApplication.getHandleTracker().register(HandleType.PIPELINE, id);
 
             shaderInfo.destroy();
         }
@@ -198,11 +215,14 @@ public abstract class GraphicsPipeline {
     }
 
     public void bind(VkCommandBuffer commandBuffer, int frameIndex) {
+        bind(commandBuffer, frameIndex, zeroDynamicOffsets);
+    }
+
+    public void bind(VkCommandBuffer commandBuffer, int frameIndex, int... dynamicOffsets) {
         vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, id);
         if (descriptorPool != null) {
-            long[] descriptorSets = new long[]{descriptorPool.getDescriptorSets()[frameIndex]};
-
-            vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout, 0, descriptorSets, null);
+            vkCmdBindDescriptorSets(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipelineLayout, 0, frameDescriptorSets[frameIndex],
+                    dynamicOffsets == null || dynamicOffsets.length == 0 ? null : dynamicOffsets);
         }
     }
 
@@ -212,5 +232,7 @@ public abstract class GraphicsPipeline {
         }
         vkDestroyPipeline(device, id, null);
         vkDestroyPipelineLayout(device, pipelineLayout, null);
+        vkApplication.getHandleTracker().unregister(HandleType.PIPELINE, id);
+        vkApplication.getHandleTracker().unregister(HandleType.PIPELINE_LAYOUT, pipelineLayout);
     }
 }
@@ -0,0 +1,71 @@
+package ru.vext.engine.vulkan.upload;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.buffer.MappedBuffer;
+import ru.vext.engine.vulkan.buffer.MemoryCategory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_TRANSFER_SRC_BIT;
+
+@Slf4j
+public class StagingPool {
+
+    public static final long MIN_BUCKET_SIZE = 64 * 1024;
+    public static final int MAX_BUFFERS_PER_BUCKET = 4;
+
+    private final VkApplication vkApplication;
+
+    private final Map<Long, Deque<MappedBuffer>> buckets = new HashMap<>();
+
+    private int createdCount, reusedCount;
+
+    public StagingPool(VkApplication vkApplication) {
+        this.vkApplication = vkApplication;
+    }
+
+    public synchronized MappedBuffer acquire(long size) {
+        long bucketSize = bucketSize(size);
+
+        Deque<MappedBuffer> bucket = buckets.get(bucketSize);
+        if (bucket != null && !bucket.isEmpty()) {
+            reusedCount++;
+            return bucket.pop();
+        }
+
+        createdCount++;
+        log.debug("Creating staging buffer of {} bytes", bucketSize);
+        MappedBuffer buffer = new MappedBuffer(vkApplication, bucketSize, VK_BUFFER_USAGE_TRANSFER_SRC_BIT);
+        buffer.setMemoryCategory(MemoryCategory.STAGING);
+        return buffer;
+    }
+
+    public synchronized void release(MappedBuffer buffer) {
+        Deque<MappedBuffer> bucket = buckets.computeIfAbsent(buffer.getSize(), key -> new ArrayDeque<>());
+
+        if (bucket.size() >= MAX_BUFFERS_PER_BUCKET) {
+            buffer.cleanup();
+            return;
+        }
+
+        bucket.push(buffer);
+    }
+
+    private static long bucketSize(long size) {
+        if (size <= MIN_BUCKET_SIZE) {
+            return MIN_BUCKET_SIZE;
+        }
+        return Long.highestOneBit(size - 1) << 1;
+    }
+
+    public synchronized void cleanup() {
+        log.debug("Staging pool created {} buffers and reused {}", createdCount, reusedCount);
+
+        buckets.values().forEach(bucket -> bucket.forEach(MappedBuffer::cleanup));
+        buckets.clear();
+    }
+}
@@ -0,0 +1,40 @@
+package ru.vext.engine.vulkan.upload;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.lwjgl.vulkan.VK10.VK_NULL_HANDLE;
+
+@Getter
+class UploadBatch {
+
+    private final VkCommandBuffer transferCommandBuffer;
+    private final VkCommandBuffer acquireCommandBuffer;
+
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final UploadFuture future;
+
+    @Setter
+    private long fence = VK_NULL_HANDLE;
+    @Setter
+    private long semaphore = VK_NULL_HANDLE;
+
+    private int operationCount;
+
+    UploadBatch(UploadScheduler scheduler, VkCommandBuffer transferCommandBuffer, VkCommandBuffer acquireCommandBuffer) {
+        this.transferCommandBuffer = transferCommandBuffer;
+        this.acquireCommandBuffer = acquireCommandBuffer;
+        this.future = new UploadFuture(scheduler, this);
+    }
+
+    void addOperation() {
+        operationCount++;
+    }
+
+    boolean isSubmitted() {
+        return fence != VK_NULL_HANDLE;
+    }
+}
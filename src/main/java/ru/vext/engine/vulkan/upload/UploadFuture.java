@@ -0,0 +1,30 @@
+package ru.vext.engine.vulkan.upload;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.CompletableFuture;
+
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class UploadFuture {
+
+    private final UploadScheduler scheduler;
+    private final UploadBatch batch;
+
+    public boolean isDone() {
+        return batch.getCompletion().isDone();
+    }
+
+    public UploadFuture thenRun(Runnable action) {
+        batch.getCompletion().thenRun(action);
+        return this;
+    }
+
+    public void await() {
+        scheduler.await(batch);
+    }
+
+    public CompletableFuture<Void> toCompletableFuture() {
+        return batch.getCompletion();
+    }
+}
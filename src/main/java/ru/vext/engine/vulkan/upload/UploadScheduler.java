@@ -0,0 +1,343 @@
+package ru.vext.engine.vulkan.upload;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+import ru.vext.engine.vulkan.QueueFamilyIndices;
+import ru.vext.engine.vulkan.VkApplication;
+import ru.vext.engine.vulkan.debug.HandleTracker;
+import ru.vext.engine.vulkan.debug.HandleType;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+@Slf4j
+public class UploadScheduler {
+
+    private static final int BUFFER_READ_ACCESS = VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT | VK_ACCESS_INDEX_READ_BIT
+            | VK_ACCESS_UNIFORM_READ_BIT | VK_ACCESS_SHADER_READ_BIT;
+    private static final int BUFFER_READ_STAGES = VK_PIPELINE_STAGE_VERTEX_INPUT_BIT | VK_PIPELINE_STAGE_VERTEX_SHADER_BIT
+            | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT;
+
+    private final VkDevice device;
+    private final HandleTracker handleTracker;
+    private final Object queueLock;
+
+    private final VkQueue transferQueue;
+    private final VkQueue graphicsQueue;
+
+    private final int transferFamily;
+    private final int graphicsFamily;
+    private final boolean ownershipTransfer;
+
+    private final long transferCommandPool;
+    private final long graphicsCommandPool;
+
+    private final List<UploadBatch> submittedBatches = new ArrayList<>();
+    private UploadBatch pendingBatch;
+
+    public UploadScheduler(VkApplication vkApplication) {
+        this.device = vkApplication.getDevice();
+        this.handleTracker = vkApplication.getHandleTracker();
+        this.queueLock = vkApplication.getQueueLock();
+        this.transferQueue = vkApplication.getTransferQueue();
+        this.graphicsQueue = vkApplication.getGraphicsQueue();
+
+        QueueFamilyIndices indices = vkApplication.getQueueFamilyIndices();
+        this.transferFamily = indices.getTransferFamilyOrGraphics();
+        this.graphicsFamily = indices.getGraphicsFamily();
+        this.ownershipTransfer = transferFamily != graphicsFamily;
+
+        this.transferCommandPool = createCommandPool(transferFamily);
+        this.graphicsCommandPool = ownershipTransfer ? createCommandPool(graphicsFamily) : VK_NULL_HANDLE;
+    }
+
+    public synchronized UploadFuture copyBuffer(long srcBuffer, long srcOffset, long dstBuffer, long dstOffset, long size) {
+        UploadBatch batch = getPendingBatch();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkBufferCopy.Buffer copyRegion = VkBufferCopy.calloc(1, stack);
+            copyRegion.srcOffset(srcOffset);
+            copyRegion.dstOffset(dstOffset);
+            copyRegion.size(size);
+
+            vkCmdCopyBuffer(batch.getTransferCommandBuffer(), srcBuffer, dstBuffer, copyRegion);
+
+            VkBufferMemoryBarrier.Buffer barrier = VkBufferMemoryBarrier.calloc(1, stack)
+                    .sType(VK_STRUCTURE_TYPE_BUFFER_MEMORY_BARRIER)
+                    .buffer(dstBuffer)
+                    .offset(dstOffset)
+                    .size(size);
+
+            if (ownershipTransfer) {
+                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .dstAccessMask(0)
+                        .srcQueueFamilyIndex(transferFamily)
+                        .dstQueueFamilyIndex(graphicsFamily);
+                vkCmdPipelineBarrier(batch.getTransferCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, barrier, null);
+
+                barrier.srcAccessMask(0).dstAccessMask(BUFFER_READ_ACCESS);
+                vkCmdPipelineBarrier(batch.getAcquireCommandBuffer(), VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, BUFFER_READ_STAGES, 0, null, barrier, null);
+            } else {
+                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .dstAccessMask(BUFFER_READ_ACCESS)
+                        .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                        .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+                vkCmdPipelineBarrier(batch.getTransferCommandBuffer(), VK_PIPELINE_STAGE_TRANSFER_BIT, BUFFER_READ_STAGES, 0, null, barrier, null);
+            }
+        }
+
+        batch.addOperation();
+        return batch.getFuture();
+    }
+
+    public synchronized UploadFuture copyBufferToImage(long srcBuffer, long srcOffset, long image, int width, int height) {
+        UploadBatch batch = getPendingBatch();
+        VkCommandBuffer commandBuffer = batch.getTransferCommandBuffer();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.calloc(1, stack)
+                    .sType(VK_STRUCTURE_TYPE_IMAGE_MEMORY_BARRIER)
+                    .oldLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                    .newLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                    .srcAccessMask(0)
+                    .dstAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                    .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .image(image)
+                    .subresourceRange(VkImageSubresourceRange.calloc(stack)
+                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                            .baseMipLevel(0)
+                            .levelCount(1)
+                            .baseArrayLayer(0)
+                            .layerCount(1));
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT, 0, null, null, barrier);
+
+            VkBufferImageCopy.Buffer copyRegion = VkBufferImageCopy.calloc(1, stack);
+            copyRegion.bufferOffset(srcOffset);
+            copyRegion.bufferRowLength(0);
+            copyRegion.bufferImageHeight(0);
+            copyRegion.imageSubresource(VkImageSubresourceLayers.calloc(stack)
+                    .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                    .mipLevel(0)
+                    .baseArrayLayer(0)
+                    .layerCount(1));
+            copyRegion.imageOffset(VkOffset3D.calloc(stack).x(0).y(0).z(0));
+            copyRegion.imageExtent(VkExtent3D.calloc(stack).width(width).height(height).depth(1));
+
+            vkCmdCopyBufferToImage(commandBuffer, srcBuffer, image, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, copyRegion);
+
+            barrier.oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                    .newLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+
+            if (ownershipTransfer) {
+                // The layout transition is part of the release/acquire pair and is declared identically on both queues
+                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .dstAccessMask(0)
+                        .srcQueueFamilyIndex(transferFamily)
+                        .dstQueueFamilyIndex(graphicsFamily);
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, null, null, barrier);
+
+                barrier.srcAccessMask(0).dstAccessMask(VK_ACCESS_SHADER_READ_BIT);
+                vkCmdPipelineBarrier(batch.getAcquireCommandBuffer(), VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, 0, null, null, barrier);
+            } else {
+                barrier.srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .dstAccessMask(VK_ACCESS_SHADER_READ_BIT);
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, 0, null, null, barrier);
+            }
+        }
+
+        batch.addOperation();
+        return batch.getFuture();
+    }
+
+    public synchronized void submit() {
+        if (pendingBatch == null) {
+            return;
+        }
+
+        UploadBatch batch = pendingBatch;
+        pendingBatch = null;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkEndCommandBuffer(batch.getTransferCommandBuffer());
+
+            VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.calloc(stack);
+            fenceInfo.sType(VK_STRUCTURE_TYPE_FENCE_CREATE_INFO);
+
+            LongBuffer pFence = stack.mallocLong(1);
+            if (vkCreateFence(device, fenceInfo, null, pFence) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create upload fence");
+            }
+
+            if (ownershipTransfer) {
+                vkEndCommandBuffer(batch.getAcquireCommandBuffer());
+
+                VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.calloc(stack);
+                semaphoreInfo.sType(VK_STRUCTURE_TYPE_SEMAPHORE_CREATE_INFO);
+
+                LongBuffer pSemaphore = stack.mallocLong(1);
+                if (vkCreateSemaphore(device, semaphoreInfo, null, pSemaphore) != VK_SUCCESS) {
+                    throw new RuntimeException("Failed to create upload semaphore");
+                }
+                batch.setSemaphore(pSemaphore.get(0));
+                handleTracker.register(HandleType.SEMAPHORE, batch.getSemaphore());
+
+                VkSubmitInfo transferSubmit = VkSubmitInfo.calloc(stack)
+                        .sType(VK_STRUCTURE_TYPE_SUBMIT_INFO)
+                        .pCommandBuffers(stack.pointers(batch.getTransferCommandBuffer()))
+                        .pSignalSemaphores(stack.longs(batch.getSemaphore()));
+
+                VkSubmitInfo acquireSubmit = VkSubmitInfo.calloc(stack)
+                        .sType(VK_STRUCTURE_TYPE_SUBMIT_INFO)
+                        .waitSemaphoreCount(1)
+                        .pWaitSemaphores(stack.longs(batch.getSemaphore()))
+                        .pWaitDstStageMask(stack.ints(VK_PIPELINE_STAGE_ALL_COMMANDS_BIT))
+                        .pCommandBuffers(stack.pointers(batch.getAcquireCommandBuffer()));
+
+                // The render thread submits and presents concurrently; the queues may alias
+                synchronized (queueLock) {
+                    if (vkQueueSubmit(transferQueue, transferSubmit, VK_NULL_HANDLE) != VK_SUCCESS) {
+                        throw new RuntimeException("Failed to submit upload batch");
+                    }
+
+                    if (vkQueueSubmit(graphicsQueue, acquireSubmit, pFence.get(0)) != VK_SUCCESS) {
+                        throw new RuntimeException("Failed to submit upload acquire batch");
+                    }
+                }
+            } else {
+                VkSubmitInfo submitInfo = VkSubmitInfo.calloc(stack)
+                        .sType(VK_STRUCTURE_TYPE_SUBMIT_INFO)
+                        .pCommandBuffers(stack.pointers(batch.getTransferCommandBuffer()));
+
+                synchronized (queueLock) {
+                    if (vkQueueSubmit(transferQueue, submitInfo, pFence.get(0)) != VK_SUCCESS) {
+                        throw new RuntimeException("Failed to submit upload batch");
+                    }
+                }
+            }
+
+            batch.setFence(pFence.get(0));
+            handleTracker.register(HandleType.FENCE, batch.getFence());
+        }
+
+        submittedBatches.add(batch);
+        log.debug("Submitted upload batch with {} operations", batch.getOperationCount());
+    }
+
+    public synchronized void poll() {
+        submit();
+
+        Iterator<UploadBatch> iterator = submittedBatches.iterator();
+        while (iterator.hasNext()) {
+            UploadBatch batch = iterator.next();
+            if (vkGetFenceStatus(device, batch.getFence()) != VK_SUCCESS) {
+                continue;
+            }
+
+            iterator.remove();
+            complete(batch);
+        }
+    }
+
+    synchronized void await(UploadBatch batch) {
+        if (batch.getCompletion().isDone()) {
+            return;
+        }
+
+        if (!batch.isSubmitted()) {
+            submit();
+        }
+
+        vkWaitForFences(device, batch.getFence(), true, 0xFFFFFFFFFFFFFFFFL);
+        poll();
+    }
+
+    private void complete(UploadBatch batch) {
+        vkDestroyFence(device, batch.getFence(), null);
+        vkFreeCommandBuffers(device, transferCommandPool, batch.getTransferCommandBuffer());
+        handleTracker.unregister(HandleType.FENCE, batch.getFence());
+        handleTracker.unregister(HandleType.COMMAND_BUFFER, batch.getTransferCommandBuffer().address());
+
+        if (ownershipTransfer) {
+            vkDestroySemaphore(device, batch.getSemaphore(), null);
+            vkFreeCommandBuffers(device, graphicsCommandPool, batch.getAcquireCommandBuffer());
+            handleTracker.unregister(HandleType.SEMAPHORE, batch.getSemaphore());
+            handleTracker.unregister(HandleType.COMMAND_BUFFER, batch.getAcquireCommandBuffer().address());
+        }
+
+        batch.getCompletion().complete(null);
+    }
+
+    private UploadBatch getPendingBatch() {
+        if (pendingBatch == null) {
+            VkCommandBuffer transferCommandBuffer = beginCommandBuffer(transferCommandPool);
+            VkCommandBuffer acquireCommandBuffer = ownershipTransfer ? beginCommandBuffer(graphicsCommandPool) : null;
+            pendingBatch = new UploadBatch(this, transferCommandBuffer, acquireCommandBuffer);
+        }
+        return pendingBatch;
+    }
+
+    private VkCommandBuffer beginCommandBuffer(long commandPool) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBufferAllocateInfo allocInfo = VkCommandBufferAllocateInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_ALLOCATE_INFO)
+                    .level(VK_COMMAND_BUFFER_LEVEL_PRIMARY)
+                    .commandPool(commandPool)
+                    .commandBufferCount(1);
+
+            PointerBuffer pCommandBuffer = stack.mallocPointer(1);
+            if (vkAllocateCommandBuffers(device, allocInfo, pCommandBuffer) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to allocate upload command buffer");
+            }
+            VkCommandBuffer commandBuffer = new VkCommandBuffer(pCommandBuffer.get(0), device);
+            handleTracker.register(HandleType.COMMAND_BUFFER, commandBuffer.address());
+
+            VkCommandBufferBeginInfo beginInfo = VkCommandBufferBeginInfo.calloc(stack)
+                    .sType(VK_STRUCTURE_TYPE_COMMAND_BUFFER_BEGIN_INFO)
+                    .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT);
+
+            vkBeginCommandBuffer(commandBuffer, beginInfo);
+            return commandBuffer;
+        }
+    }
+
+    private long createCommandPool(int queueFamily) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandPoolCreateInfo commandPoolInfo = VkCommandPoolCreateInfo.calloc(stack);
+            commandPoolInfo.sType(VK_STRUCTURE_TYPE_COMMAND_POOL_CREATE_INFO);
+            commandPoolInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+            commandPoolInfo.queueFamilyIndex(queueFamily);
+
+            LongBuffer pCommandPool = stack.mallocLong(1);
+            if (vkCreateCommandPool(device, commandPoolInfo, null, pCommandPool) != VK_SUCCESS) {
+                throw new RuntimeException("Failed to create upload command pool");
+            }
+
+            handleTracker.register(HandleType.COMMAND_POOL, pCommandPool.get(0));
+            return pCommandPool.get(0);
+        }
+    }
+
+    public synchronized void cleanup() {
+        submit();
+
+        for (UploadBatch batch : submittedBatches) {
+            vkWaitForFences(device, batch.getFence(), true, 0xFFFFFFFFFFFFFFFFL);
+            complete(batch);
+        }
+        submittedBatches.clear();
+
+        vkDestroyCommandPool(device, transferCommandPool, null);
+        handleTracker.unregister(HandleType.COMMAND_POOL, transferCommandPool);
+        if (ownershipTransfer) {
+            vkDestroyCommandPool(device, graphicsCommandPool, null);
+            handleTracker.unregister(HandleType.COMMAND_POOL, graphicsCommandPool);
+        }
+    }
+}
@@ -1,14 +1,51 @@
 #version 450
 
 layout(push_constant) uniform PushConstants {
-    vec4 inColor;
+    uint transformSlot;
 } pushConstants;
 
-layout(location = 0) in vec2 inPosition;
+layout(set = 0, binding = 0) uniform FrameGlobals {
+    mat4 projection;
+    vec4 viewport;
+    float time;
+    int damageCount;
+    vec4 damage[8];
+} frameGlobals;
+layout(set = 0, binding = 1) readonly buffer Transforms {
+    mat4 transforms[];
+} transforms;
+
+layout(location = 0) in vec4 inVertex;
+
+layout(location = 1) in mat4 inMatrix;
+layout(location = 5) in vec4 inColor;
+layout(location = 6) in vec4 inSize;
+layout(location = 7) in vec4 inClip;
 
 layout(location = 0) out vec4 fragColor;
+layout(location = 1) flat out vec4 fragClip;
+
+// Matches Drawer.BUNDLE_CLIP_EXTENT; clips at least this large are the unbounded root clip of a bundle
+const float UNBOUNDED_CLIP = 1e7;
+
+vec4 transformClip(vec4 clip) {
+    if (all(lessThanEqual(clip.xy, vec2(-UNBOUNDED_CLIP))) && all(greaterThanEqual(clip.zw, vec2(UNBOUNDED_CLIP)))) {
+        return clip;
+    }
+
+    // Clips recorded inside a cached bundle are local to it and follow the bundle transform; all four corners
+    // are needed, since a rotated transform can move any of them to the edge of the bounds
+    mat4 transform = transforms.transforms[pushConstants.transformSlot];
+    vec2 a = (transform * vec4(clip.xy, 0.0, 1.0)).xy;
+    vec2 b = (transform * vec4(clip.zy, 0.0, 1.0)).xy;
+    vec2 c = (transform * vec4(clip.xw, 0.0, 1.0)).xy;
+    vec2 d = (transform * vec4(clip.zw, 0.0, 1.0)).xy;
+    return vec4(min(min(a, b), min(c, d)), max(max(a, b), max(c, d)));
+}
 
 void main() {
-    gl_Position = vec4(inPosition, 0.0, 1.0);
-    fragColor = pushConstants.inColor;
-}
\ No newline at end of file
+    vec2 position = inVertex.xy * inSize.xy + inVertex.zw * inSize.z;
+    gl_Position = frameGlobals.projection * transforms.transforms[pushConstants.transformSlot] * inMatrix * vec4(position, 0.0, 1.0);
+    fragColor = inColor;
+    fragClip = transformClip(inClip);
+}
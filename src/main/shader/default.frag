@@ -1,9 +1,32 @@
 #version 450
 
+layout(set = 0, binding = 0) uniform FrameGlobals {
+    mat4 projection;
+    vec4 viewport;
+    float time;
+    int damageCount;
+    vec4 damage[8];
+} frameGlobals;
+
 layout(location = 0) in vec4 fragColor;
+layout(location = 1) flat in vec4 fragClip;
 
 layout(location = 0) out vec4 outColor;
 
+bool isDamaged(vec2 position) {
+    for (int i = 0; i < frameGlobals.damageCount; i++) {
+        vec4 rect = frameGlobals.damage[i];
+        if (all(greaterThanEqual(position, rect.xy)) && all(lessThan(position, rect.zw))) {
+            return true;
+        }
+    }
+    return false;
+}
+
 void main() {
+    if (any(lessThan(gl_FragCoord.xy, fragClip.xy)) || any(greaterThanEqual(gl_FragCoord.xy, fragClip.zw))
+            || !isDamaged(gl_FragCoord.xy)) {
+        discard;
+    }
     outColor = fragColor;
-}
\ No newline at end of file
+}
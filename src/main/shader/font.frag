@@ -1,20 +1,47 @@
 #version 450
 
-layout(binding = 0) uniform sampler2D sdfTexture;
-layout(binding = 1) readonly buffer GlyphBuffer {
+layout(set = 0, binding = 0) uniform FrameGlobals {
+    mat4 projection;
+    vec4 viewport;
+    float time;
+    int damageCount;
+    vec4 damage[8];
+} frameGlobals;
+const int MAX_FONTS = 16;
+const int GLYPHS_PER_FONT = 1279;
+
+layout(binding = 1) uniform sampler2D sdfTextures[MAX_FONTS];
+layout(binding = 2) readonly buffer GlyphBuffer {
     float data[];
 } glyphBuffer;
 
 layout(location = 0) in vec2 fragTexCoord;
-layout(location = 1) in vec3 fragColor;
+layout(location = 1) in vec4 fragColor;
 layout(location = 2) flat in int glyphIndex;
 layout(location = 3) flat in float glyphScale;
 layout(location = 4) flat in float sdfTexelSize;
+layout(location = 5) flat in vec4 fragClip;
+layout(location = 6) flat in int fontIndex;
 
 layout(location = 0) out vec4 outColor;
 
+bool isDamaged(vec2 position) {
+    for (int i = 0; i < frameGlobals.damageCount; i++) {
+        vec4 rect = frameGlobals.damage[i];
+        if (all(greaterThanEqual(position, rect.xy)) && all(lessThan(position, rect.zw))) {
+            return true;
+        }
+    }
+    return false;
+}
+
 void main() {
-    int dataOffset = glyphIndex * 7;
+    if (any(lessThan(gl_FragCoord.xy, fragClip.xy)) || any(greaterThanEqual(gl_FragCoord.xy, fragClip.zw))
+            || !isDamaged(gl_FragCoord.xy)) {
+        discard;
+    }
+
+    int dataOffset = (fontIndex * GLYPHS_PER_FONT + glyphIndex) * 7;
 
     vec2 minUV = vec2(glyphBuffer.data[dataOffset + 3], glyphBuffer.data[dataOffset + 4]);
     vec2 maxUV = vec2(glyphBuffer.data[dataOffset + 5], glyphBuffer.data[dataOffset + 6]);
@@ -22,12 +49,13 @@ void main() {
     vec2 size = maxUV - minUV;
     vec2 texCoord = minUV + (fragTexCoord * size);
 
-    float distance = texture(sdfTexture, texCoord).r;
+    // Uniform within a draw, glyph batches are split on font change
+    float distance = texture(sdfTextures[fontIndex], texCoord).r;
 
     float screenPixelSize = length(fwidth(texCoord) * sdfTexelSize);
     float smoothing = 0.001 * screenPixelSize * glyphScale;
 
     float alpha = smoothstep(0.49 - smoothing, 0.49 + smoothing, distance);
 
-    outColor = vec4(fragColor, alpha);
+    outColor = vec4(fragColor.rgb, fragColor.a * alpha);
 }
\ No newline at end of file
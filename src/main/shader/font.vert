@@ -1,23 +1,40 @@
 #version 450
 
 layout(push_constant) uniform PushConstants {
-    mat4 matrix;
-    vec3 inColor;
     float glyphScale;
     float sdfTexelSize;
+    uint transformSlot;
 } pushConstants;
-layout(binding = 1) readonly buffer GlyphBuffer {
+layout(set = 0, binding = 0) uniform FrameGlobals {
+    mat4 projection;
+    vec4 viewport;
+    float time;
+    int damageCount;
+    vec4 damage[8];
+} frameGlobals;
+const int GLYPHS_PER_FONT = 1279;
+
+layout(binding = 2) readonly buffer GlyphBuffer {
     float data[];
 } glyphBuffer;
+layout(set = 0, binding = 3) readonly buffer Transforms {
+    mat4 transforms[];
+} transforms;
 
-layout(location = 0) in int glyphIndex;
-layout(location = 1) in float offsetX;
+layout(location = 0) in mat4 inMatrix;
+layout(location = 4) in vec4 inColor;
+layout(location = 5) in float offsetX;
+layout(location = 6) in int glyphIndex;
+layout(location = 7) in vec4 inClip;
+layout(location = 8) in int fontIndex;
 
 layout(location = 0) out vec2 fragTexCoord;
-layout(location = 1) out vec3 fragColor;
+layout(location = 1) out vec4 fragColor;
 layout(location = 2) flat out int _glyphIndex;
 layout(location = 3) flat out float _glyphScale;
 layout(location = 4) flat out float _sdfTexelSize;
+layout(location = 5) flat out vec4 fragClip;
+layout(location = 6) flat out int _fontIndex;
 
 vec2 positions[4] = vec2[](
 vec2(0, -1),
@@ -26,8 +43,26 @@ vec2(0, 0),
 vec2(1, 0)
 );
 
+// Matches Drawer.BUNDLE_CLIP_EXTENT; clips at least this large are the unbounded root clip of a bundle
+const float UNBOUNDED_CLIP = 1e7;
+
+vec4 transformClip(vec4 clip) {
+    if (all(lessThanEqual(clip.xy, vec2(-UNBOUNDED_CLIP))) && all(greaterThanEqual(clip.zw, vec2(UNBOUNDED_CLIP)))) {
+        return clip;
+    }
+
+    // Clips recorded inside a cached bundle are local to it and follow the bundle transform; all four corners
+    // are needed, since a rotated transform can move any of them to the edge of the bounds
+    mat4 transform = transforms.transforms[pushConstants.transformSlot];
+    vec2 a = (transform * vec4(clip.xy, 0.0, 1.0)).xy;
+    vec2 b = (transform * vec4(clip.zy, 0.0, 1.0)).xy;
+    vec2 c = (transform * vec4(clip.xw, 0.0, 1.0)).xy;
+    vec2 d = (transform * vec4(clip.zw, 0.0, 1.0)).xy;
+    return vec4(min(min(a, b), min(c, d)), max(max(a, b), max(c, d)));
+}
+
 void main() {
-    int dataOffset = glyphIndex * 7;
+    int dataOffset = (fontIndex * GLYPHS_PER_FONT + glyphIndex) * 7;
 
     mat4 translation = mat4(1.0);
     translation[3][0] = offsetX;
@@ -37,15 +72,17 @@ void main() {
     scaling[0][0] = glyphBuffer.data[dataOffset];
     scaling[1][1] = glyphBuffer.data[dataOffset + 1];
 
-    mat4 movedMatrix = pushConstants.matrix * translation;
+    mat4 movedMatrix = frameGlobals.projection * transforms.transforms[pushConstants.transformSlot] * inMatrix * translation;
     movedMatrix = movedMatrix * scaling;
 
     gl_Position = movedMatrix * vec4(positions[gl_VertexIndex], 0.0, 1.0);
 
     fragTexCoord = positions[gl_VertexIndex] + vec2(0, 1);
-    fragColor = pushConstants.inColor;
+    fragColor = inColor;
+    fragClip = transformClip(inClip);
 
     _glyphIndex = glyphIndex;
+    _fontIndex = fontIndex;
     _glyphScale = pushConstants.glyphScale;
     _sdfTexelSize = pushConstants.sdfTexelSize;
 }
\ No newline at end of file
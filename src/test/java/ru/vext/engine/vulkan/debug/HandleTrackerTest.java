@@ -0,0 +1,80 @@
+package ru.vext.engine.vulkan.debug;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandleTrackerTest {
+
+    @Test
+    void countsLiveHandlesPerType() {
+        HandleTracker tracker = new HandleTracker(true);
+
+        tracker.register(HandleType.BUFFER, 1);
+        tracker.register(HandleType.BUFFER, 2);
+        tracker.register(HandleType.IMAGE, 3);
+
+        assertEquals(2, tracker.getLiveCount(HandleType.BUFFER));
+        assertEquals(1, tracker.getLiveCount(HandleType.IMAGE));
+        assertEquals(0, tracker.getLiveCount(HandleType.SAMPLER));
+
+        tracker.unregister(HandleType.BUFFER, 1);
+
+        assertEquals(1, tracker.getLiveCount(HandleType.BUFFER));
+        assertEquals(1, tracker.getLiveCounts().get(HandleType.IMAGE));
+    }
+
+    @Test
+    void sameHandleValueIsTrackedPerType() {
+        HandleTracker tracker = new HandleTracker(true);
+
+        tracker.register(HandleType.BUFFER, 7);
+        tracker.register(HandleType.IMAGE, 7);
+        tracker.unregister(HandleType.BUFFER, 7);
+
+        assertEquals(0, tracker.getLiveCount(HandleType.BUFFER));
+        assertEquals(1, tracker.getLiveCount(HandleType.IMAGE));
+    }
+
+    @Test
+    void nextFrameAdvancesFrameNumberWithoutChangingCounts() {
+        HandleTracker tracker = new HandleTracker(true);
+
+        tracker.register(HandleType.COMMAND_POOL, 1);
+        tracker.nextFrame();
+        tracker.register(HandleType.COMMAND_POOL, 2);
+        tracker.nextFrame();
+
+        assertEquals(2, tracker.getFrameNumber());
+        assertEquals(2, tracker.getLiveCount(HandleType.COMMAND_POOL));
+    }
+
+    @Test
+    void reportsEveryHandleStillAlive() {
+        HandleTracker tracker = new HandleTracker(true);
+
+        tracker.register(HandleType.BUFFER, 1);
+        tracker.register(HandleType.IMAGE_VIEW, 2);
+        tracker.register(HandleType.DEVICE_MEMORY, 3);
+        tracker.unregister(HandleType.IMAGE_VIEW, 2);
+
+        assertEquals(2, tracker.reportLeaks());
+
+        tracker.unregister(HandleType.BUFFER, 1);
+        tracker.unregister(HandleType.DEVICE_MEMORY, 3);
+
+        assertEquals(0, tracker.reportLeaks());
+    }
+
+    @Test
+    void disabledTrackerRecordsNothing() {
+        HandleTracker tracker = new HandleTracker(false);
+
+        tracker.register(HandleType.BUFFER, 1);
+        tracker.nextFrame();
+
+        assertEquals(0, tracker.getLiveCount(HandleType.BUFFER));
+        assertEquals(1, tracker.getFrameNumber());
+        assertEquals(0, tracker.reportLeaks());
+    }
+}